@@ -2,6 +2,10 @@ package scene3d;
 
 
 
+import scene3d.utils.ModelBounds;
+import scene3d.utils.RayUtils;
+import scene3d.utils.TriangleTree;
+
 import com.badlogic.gdx.graphics.Camera;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.g3d.Environment;
@@ -11,7 +15,12 @@ import com.badlogic.gdx.graphics.g3d.ModelBatch;
 import com.badlogic.gdx.graphics.g3d.ModelInstance;
 import com.badlogic.gdx.graphics.g3d.attributes.ColorAttribute;
 import com.badlogic.gdx.graphics.g3d.utils.AnimationController;
+import com.badlogic.gdx.math.Frustum;
+import com.badlogic.gdx.math.Intersector;
+import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Plane;
+import com.badlogic.gdx.math.Quaternion;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.math.collision.BoundingBox;
 import com.badlogic.gdx.math.collision.Ray;
@@ -28,23 +37,60 @@ public class Actor3d extends ModelInstance implements Disposable {
 	private final DelayedRemovalArray<Event3dListener> listeners = new DelayedRemovalArray<Event3dListener>(0);
 	private final Array<Action3d> actions = new Array<Action3d>(0);
 	
+	/** The center of the bounding sphere in model space. */
 	public final Vector3 center = new Vector3();
+	/** The size of the axis aligned bounds in model space. */
     public final Vector3 dimensions = new Vector3();
-    private BoundingBox boundBox = new BoundingBox();
-    public final float radius;
+    /** The bounds in model space, usually shared with every actor3d of the same model, see {@link ModelBounds#get(Model)}. */
+    private ModelBounds bounds;
+    /** The radius of the bounding sphere in model space. */
+    public float radius;
+    /** The center of the bounding sphere in world space, updated with the world transform. */
+    public final Vector3 worldCenter = new Vector3();
+    float worldRadius;
+    /** The axis aligned bounds in world space, updated with the world transform. For a {@link Group3d} they also enclose all
+     * descendants. */
+    final BoundingBox worldBounds = new BoundingBox();
+    /** The index of the frustum plane that rejected this actor3d at its last {@link #isCullable(Frustum)}, tested first. */
+    int cullPlane;
+    /** The {@link Stage3d#enableCoherentCulling(float) culling epoch} in which this actor3d was found well inside of the frustum
+     * of the camera, or -1. */
+    int insideEpoch = -1;
 	
 	private String name;
 	private boolean visible = true;
 	
 	float x, y, z;
 	float scaleX = 1, scaleY = 1, scaleZ = 1;
+	/** The rotation relative to the parent. The yaw, pitch and roll are derived from it lazily, see {@link #validateEuler()}. */
+	final Quaternion rotation = new Quaternion();
 	float yaw = 0f,pitch =0f, roll=0f;
-	Matrix4 rotationMatrix = new Matrix4();
+	private boolean eulerDirty;
+	
+	/** The transform relative to the parent, built from the position, rotation and scale. The inherited {@link #transform} holds
+	 * the world transform, which is the parent's world transform multiplied by this one. */
+	final Matrix4 localTransform = new Matrix4();
+	private boolean localDirty = true;
+	boolean worldDirty = true;
+	/** The slot of this actor3d in the {@link TransformStore} of its stage3d, or -1. */
+	int transformSlot = -1;
+	/** True while this actor3d waits for the {@link SpatialIndex3d spatial indices} of its stage3d to be updated. */
+	boolean boundsQueued;
+	/** If true picking tests the triangles of the model, else only the world bounds. */
+	private boolean exactPicking = true;
+	/** The triangles of the model, looked up on the first exact pick. */
+	private TriangleTree triangles;
 	private AnimationController animation;
+	/** If true this actor3d and its descendants never move and can be merged by a {@link StaticBatcher}. */
+	private boolean staticContent;
+	/** The batch this actor3d was merged into, which draws it instead. */
+	StaticBatch staticBatch;
+	/** The size on screen below which this actor3d, or the children of this group, are not drawn, or -1 to use the one of the
+	 * parent. */
+	float minScreenSize = -1;
 	
 	public Actor3d(){
 		this(new Model());
-		setScale(0,0,0);
 	}
 	
 	public Actor3d(Model model){
@@ -54,19 +100,17 @@ public class Actor3d extends ModelInstance implements Disposable {
 	public Actor3d(Model model, float x, float y, float z){
 		super(model);
 		setPosition(x,y,z);
-		//boundBox = model.meshes.get(0).calculateBoundingBox();
-		calculateBoundingBox(boundBox);
-        center.set(boundBox.getCenter());
-        dimensions.set(boundBox.getDimensions());
-		radius = dimensions.len() / 2f;
+		setBounds(ModelBounds.get(model));
 		animation = new AnimationController(this);
 	}
 	
 	/** Updates the actor3d based on time. Typically this is called each frame by {@link Stage3d#act(float)}.
 	 * <p>
-	 * The default implementation calls {@link Action3d#act(float)} on each action and removes actions that are complete.
+	 * The default implementation calls {@link Action3d#act(float)} on each action and removes actions that are complete. Running
+	 * actions and animations tell the stage3d that its scene changed, see {@link Stage3d#isDirty()}.
 	 * @param delta Time in seconds since the last frame. */
 	public void act (float delta) {
+		if (actions.size > 0 && stage3d != null) stage3d.sceneChanged();
 		for (int i = 0; i < actions.size; i++) {
 			Action3d action3d = actions.get(i);
 			if (action3d.act(delta) && i < actions.size) {
@@ -75,16 +119,27 @@ public class Actor3d extends ModelInstance implements Disposable {
 				i--;
 			}
 		}
-		if (animation.inAction)
+		if (animation.inAction) {
 			animation.update(delta);
+			if (stage3d != null) stage3d.sceneChanged();
+		}
 	}
 	
 	public void draw(ModelBatch modelBatch, Environment environment){
-		modelBatch.render(this, environment);
+		final DynamicBatcher dynamic = stage3d == null ? null : stage3d.getDrawDynamicBatcher();
+		if (dynamic != null && dynamic.add(this, environment)) return;
+		final InstanceBatcher instances = stage3d == null ? null : stage3d.getDrawInstanceBatcher();
+		if (instances != null)
+			instances.add(this, environment);
+		else
+			modelBatch.render(this, environment);
 	}
 	
+	private static final PickResult hitResult = new PickResult();
+	/** Returns this actor3d if it is visible and under the screen coordinates, as seen by the camera of its stage3d, else null. */
 	public Actor3d hit (float x, float y) {
-		return null;
+		if (stage3d == null || !isVisibleInHierarchy()) return null;
+		return intersect(stage3d.getCamera().getPickRay(x, y), hitResult.reset()) ? this : null;
 	}
 
 	/** Removes this actor3d from its parent, if it has a parent.
@@ -94,7 +149,37 @@ public class Actor3d extends ModelInstance implements Disposable {
 		return false;
 	}
 	
-	/** Add a listener to receive events that {@link #hit(float, float, boolean) hit} this actor3d. See {@link #fire(Event)}.
+	/** Sets this actor3d as the event {@link Event3d#setTarget(Actor3d) target} and propagates the event to this actor3d and then,
+	 * if the event {@link Event3d#getBubbles() bubbles}, to its ascendants. Any listener can {@link Event3d#stop() stop} the
+	 * propagation.
+	 * @return true if the event was {@link Event3d#cancel() cancelled}. */
+	public boolean fire (Event3d event) {
+		if (event.getStage() == null) event.setStage(getStage3d());
+		event.setTarget(this);
+		notify(event);
+		if (!event.getBubbles() || event.isStopped()) return event.isCancelled();
+		for (Actor3d parent = this.parent; parent != null; parent = parent.parent) {
+			parent.notify(event);
+			if (event.isStopped()) break;
+		}
+		return event.isCancelled();
+	}
+
+	/** Notifies this actor3d's listeners of the event. The event is not propagated to any other actor3ds. Listeners that return
+	 * true {@link Event3d#handle() handle} the event.
+	 * @return true if the event was {@link Event3d#cancel() cancelled}. */
+	public boolean notify (Event3d event) {
+		if (listeners.size == 0) return event.isCancelled();
+		event.setListenerActor(this);
+		if (event.getStage() == null) event.setStage(stage3d);
+		listeners.begin();
+		for (int i = 0, n = listeners.size; i < n; i++)
+			if (listeners.get(i).handle(event)) event.handle();
+		listeners.end();
+		return event.isCancelled();
+	}
+	
+	/** Add a listener to receive events that {@link #hit(float, float, boolean) hit} this actor3d. See {@link #fire(Event3d)}.
 	 * 
 	 * @see InputListener
 	 * @see ClickListener */
@@ -148,7 +233,10 @@ public class Actor3d extends ModelInstance implements Disposable {
 	/** Called by the framework when this actor3d or any parent is added to a group that is in the stage3d.
 	 * @param stage3d May be null if the actor3d or any parent is no longer in a stage. */
 	protected void setStage3d(Stage3d stage3d) {
+		if (this.stage3d == stage3d) return;
+		if (this.stage3d != null) this.stage3d.actorRemoved(this);
 		this.stage3d = stage3d;
+		if (stage3d != null) stage3d.actorAdded(this);
 	}
 
 	/** Returns the stage3d that this actor3d is currently in, or null if not in a stage. */
@@ -192,47 +280,176 @@ public class Actor3d extends ModelInstance implements Disposable {
 	 * @param parent May be null if the actor3d has been removed from the parent. */
 	protected void setParent (Group3d parent) {
 		this.parent = parent;
+		invalidateWorldTransform();
+		if (parent != null) parent.invalidateChildren();
 	}
 	
 	private static final Vector3 position = new Vector3();
+	/** Returns true if the world bounds of this actor3d are at least partially inside of the camera's frustum. The cheap sphere
+	 * test rejects most invisible actor3ds, the box test then rejects the ones that are only inside of the looser sphere. */
 	public boolean isCullable(final Camera cam) {
-	    return cam.frustum.sphereInFrustum(getTransform().getTranslation(position).add(center), radius);
+		return isCullable(cam.frustum);
+	}
+	
+	/** Returns true if the world bounds of this actor3d are at least partially inside of the frustum. The plane that rejected this
+	 * actor3d at the last test is tested first, as it most likely rejects it again while the camera and actor3d barely move. */
+	public boolean isCullable(final Frustum frustum) {
+		validateTransform();
+		final Plane[] planes = frustum.planes;
+		if (isOutside(planes[cullPlane])) return false;
+		for (int i = 0, n = planes.length; i < n; i++) {
+			if (i != cullPlane && isOutside(planes[i])) {
+				cullPlane = i;
+				return false;
+			}
+		}
+		return true;
     }
 	
+	/** Returns true if the bounding sphere or, when the sphere crosses the plane, the world bounds are behind the plane. */
+	private boolean isOutside(Plane plane) {
+		final float nx = plane.normal.x, ny = plane.normal.y, nz = plane.normal.z;
+		final float distance = nx * worldCenter.x + ny * worldCenter.y + nz * worldCenter.z + plane.d;
+		if (distance < -worldRadius) return true;
+		if (distance >= worldRadius) return false;
+		final BoundingBox box = worldBounds;
+		// The corner farthest along the normal is behind the plane only if the whole box is.
+		return nx * (nx > 0 ? box.max.x : box.min.x) + ny * (ny > 0 ? box.max.y : box.min.y)
+			+ nz * (nz > 0 ? box.max.z : box.min.z) + plane.d < 0;
+	}
+	
+	/** Sets the diameter on screen, in units of the stage3d height, below which this actor3d is not drawn even though it is in
+	 * the frustum. Set on a group, it applies to the descendants that don't set their own. Only used when
+	 * {@link Stage3d#enableContributionCulling(float) contribution culling} is enabled.
+	 * @param minScreenSize 0 to always draw, or -1 to use the one of the parent, which is the default. */
+	public void setMinScreenSize(float minScreenSize) {
+		this.minScreenSize = minScreenSize;
+		if (stage3d != null) stage3d.sceneChanged();
+	}
+	
+	public float getMinScreenSize() {
+		return minScreenSize;
+	}
+	
+	/** Returns the minimum screen size that applies to this actor3d, from itself, its ascendants or its stage3d. */
+	float getInheritedMinScreenSize() {
+		for (Actor3d actor3d = this; actor3d != null; actor3d = actor3d.parent)
+			if (actor3d.minScreenSize >= 0) return actor3d.minScreenSize;
+		return stage3d == null ? 0 : stage3d.getMinScreenSize();
+	}
+	
 	public boolean isVisible () {
 		return visible;
 	
 	}
+	
+	/** Returns true if this actor3d and all of its ascendants are visible. */
+	boolean isVisibleInHierarchy () {
+		for (Actor3d actor3d = this; actor3d != null; actor3d = actor3d.parent)
+			if (!actor3d.visible) return false;
+		return true;
+	}
 	/** If false, the actor3d will not be drawn and will not receive touch events. Default is true. */
 	public void setVisible (boolean visible) {
+		if (this.visible == visible) return;
 		this.visible = visible;
+		if (stage3d != null) stage3d.sceneChanged();
 	}
 	
 	/** @return -1 on no intersection, or when there is an intersection: the squared distance between the center of this 
      * object and the point on the ray closest to this object when there is intersection. */
     public float intersects(Ray ray) {
-        transform.getTranslation(position).add(center);
+        validateTransform();
+        final Vector3 position = worldCenter;
         final float len = ray.direction.dot(position.x-ray.origin.x, position.y-ray.origin.y, position.z-ray.origin.z);
         if (len < 0f)
             return -1f;
         float dist2 = position.dst2(ray.origin.x+ray.direction.x*len, ray.origin.y+ray.direction.y*len, ray.origin.z+ray.direction.z*len);
-        return (dist2 <= radius * radius) ? dist2 : -1f;
+        if (dist2 > worldRadius * worldRadius || !Intersector.intersectRayBoundsFast(ray, worldBounds))
+            return -1f;
+        return dist2;
     }
 	
+
+	/** Tests the ray, whose direction must be normalized, against this actor3d and stores the hit in the result if it is closer
+	 * than the hit already there. The world bounds are tested first and, if {@link #setExactPicking(boolean) exact picking} is
+	 * on and the model has triangles, then the triangles of the model.
+	 * @return true if the result was changed */
+	public boolean intersect(Ray ray, PickResult result) {
+		validateTransform();
+		if (isEmpty(worldBounds)) return false;
+		final float distance = RayUtils.intersectBox(ray, worldBounds);
+		if (distance < 0 || distance >= result.distance) return false;
+		if (exactPicking) {
+			if (triangles == null) triangles = TriangleTree.get(model);
+			if (!triangles.isEmpty()) return intersectTriangles(ray, result);
+		}
+		result.set(this, ray, distance);
+		return true;
+	}
+	
+	private static final Matrix4 inverse = new Matrix4();
+	private static final Ray modelRay = new Ray(new Vector3(), new Vector3());
+	/** Intersects the ray with the triangles of the model in model space, so that the shared triangle tree does not need to be
+	 * transformed. The model space direction is not normalized, which keeps distances along it equal to world distances. */
+	private boolean intersectTriangles(Ray ray, PickResult result) {
+		if (transform.det() == 0) return false;
+		final float[] m = inverse.set(transform).inv().val;
+		final Vector3 d = ray.direction;
+		modelRay.origin.set(ray.origin).mul(inverse);
+		modelRay.direction.set(m[Matrix4.M00] * d.x + m[Matrix4.M01] * d.y + m[Matrix4.M02] * d.z,
+			m[Matrix4.M10] * d.x + m[Matrix4.M11] * d.y + m[Matrix4.M12] * d.z,
+			m[Matrix4.M20] * d.x + m[Matrix4.M21] * d.y + m[Matrix4.M22] * d.z);
+		final float distance = triangles.intersect(modelRay, result.distance);
+		if (distance < 0) return false;
+		result.set(this, ray, distance);
+		result.triangle = triangles.getHitTriangle();
+		// Normals transform with the inverse transpose.
+		final Vector3 n = triangles.getHitNormal(result.normal);
+		n.set(m[Matrix4.M00] * n.x + m[Matrix4.M10] * n.y + m[Matrix4.M20] * n.z,
+			m[Matrix4.M01] * n.x + m[Matrix4.M11] * n.y + m[Matrix4.M21] * n.z,
+			m[Matrix4.M02] * n.x + m[Matrix4.M12] * n.y + m[Matrix4.M22] * n.z).nor();
+		return true;
+	}
+	
+	/** If true, the default, picking finds the exact triangle of the model under the ray, else it only tests the world bounds.
+	 * The triangles of each model are put in a {@link TriangleTree} the first time an actor3d of that model is picked. */
+	public void setExactPicking(boolean exactPicking) {
+		this.exactPicking = exactPicking;
+	}
+	
+	public boolean isExactPicking() {
+		return exactPicking;
+	}
+	
+	/** Marks this actor3d, and for a group all its descendants, as never moving once the scene is built, so that a
+	 * {@link StaticBatcher} may merge its meshes with those of other static actor3ds. */
+	public void setStatic(boolean staticContent) {
+		this.staticContent = staticContent;
+	}
+	
+	public boolean isStatic() {
+		return staticContent;
+	}
+	
+	/** Returns the {@link StaticBatch} that draws this actor3d in its place, or null. The actor3d is still picked and gets events,
+	 * it is only skipped when drawing. */
+	public StaticBatch getStaticBatch() {
+		return staticBatch;
+	}
+	
 	public void setPosition(float x, float y, float z) {
 		this.x = x;
 		this.y = y;
 		this.z = z;
-		transform.setToTranslationAndScaling(this.x, this.y, this.z, scaleX, scaleY, scaleZ);
-		transform.mul(rotationMatrix);
+		invalidateTransform();
 	}
 	
 	public void translate(float x, float y, float z) {
 		this.x += x;
 		this.y += y;
 		this.z += z;
-		transform.setToTranslationAndScaling(this.x, this.y, this.z, scaleX, scaleY, scaleZ);
-		transform.mul(rotationMatrix);
+		invalidateTransform();
 	}
 	
 	/* 
@@ -243,9 +460,8 @@ public class Actor3d extends ModelInstance implements Disposable {
 		yaw = newYaw;
 		pitch = newPitch;
 		roll = newRoll;
-		rotationMatrix = transform.setFromEulerAngles(yaw, pitch, roll).cpy();
-		transform.setToTranslationAndScaling(x, y, z, scaleX, scaleY, scaleZ);
-		transform.mul(rotationMatrix);
+		eulerDirty = false;
+		rotationChanged();
 	}
 	
 	/* 
@@ -253,10 +469,9 @@ public class Actor3d extends ModelInstance implements Disposable {
 	 *  @param newYaw value must be within 360 degrees
 	 */
 	public void setYaw(float newYaw){
+		validateEuler();
 		yaw = newYaw;
-		rotationMatrix = transform.setFromEulerAngles(yaw, pitch, roll).cpy();
-		transform.setToTranslationAndScaling(x, y, z, scaleX, scaleY, scaleZ);
-		transform.mul(rotationMatrix);
+		rotationChanged();
 	}
 	
 	/* 
@@ -264,10 +479,9 @@ public class Actor3d extends ModelInstance implements Disposable {
 	 *  @param newPitch value must be within 360 degrees
 	 */
 	public void setPitch(float newPitch){
+		validateEuler();
 		pitch = newPitch;
-		rotationMatrix = transform.setFromEulerAngles(yaw, pitch, roll).cpy();
-		transform.setToTranslationAndScaling(x, y, z, scaleX, scaleY, scaleZ);
-		transform.mul(rotationMatrix);
+		rotationChanged();
 	}
 	
 	/* 
@@ -275,10 +489,21 @@ public class Actor3d extends ModelInstance implements Disposable {
 	 *  @param newRoll value must be within 360 degrees
 	 */
 	public void setRoll(float newRoll){
+		validateEuler();
 		roll = newRoll;
-		rotationMatrix = transform.setFromEulerAngles(yaw, pitch, roll).cpy();
-		transform.setToTranslationAndScaling(x, y, z, scaleX, scaleY, scaleZ);
-		transform.mul(rotationMatrix);
+		rotationChanged();
+	}
+	
+	/** Sets the rotation relative to the parent. The yaw, pitch and roll are derived from it when next requested. */
+	public void setRotation(Quaternion rotation){
+		this.rotation.set(rotation);
+		eulerDirty = true;
+		invalidateTransform();
+	}
+	
+	/** Returns the rotation relative to the parent. It must not be modified directly, use {@link #setRotation(Quaternion)}. */
+	public Quaternion getRotation(){
+		return rotation;
 	}
 	
 	
@@ -294,44 +519,65 @@ public class Actor3d extends ModelInstance implements Disposable {
 	 *  @param amountYaw,amountPitch,amountRoll These values must be within 360 degrees
 	 */
 	public void rotate(float amountYaw, float amountPitch, float amountRoll){
+		validateEuler();
 		yaw = normalizeDegrees(yaw + amountYaw);
 		pitch = normalizeDegrees(pitch + amountPitch);
 		roll = normalizeDegrees(roll + amountRoll);
-		rotationMatrix = transform.setFromEulerAngles(yaw, pitch, roll).cpy();
-		transform.setToTranslationAndScaling(x, y, z, scaleX, scaleY, scaleZ);
-		transform.mul(rotationMatrix);
+		rotationChanged();
 	}
 	
 	public void rotateYaw(float amountYaw){
+		validateEuler();
 		yaw = normalizeDegrees(yaw + amountYaw);
-		rotationMatrix = transform.setFromEulerAngles(yaw, pitch, roll).cpy();
-		transform.setToTranslationAndScaling(x, y, z, scaleX, scaleY, scaleZ);
-		transform.mul(rotationMatrix);
+		rotationChanged();
 	}
 	
 	public void rotatePitch(float amountPitch){
+		validateEuler();
 		pitch = normalizeDegrees(pitch + amountPitch);
-		rotationMatrix = transform.setFromEulerAngles(yaw, pitch, roll).cpy();
-		transform.setToTranslationAndScaling(x, y, z, scaleX, scaleY, scaleZ);
-		transform.mul(rotationMatrix);
+		rotationChanged();
 	}
 	
 	public void rotateRoll(float amountRoll){
+		validateEuler();
 		roll = normalizeDegrees(roll + amountRoll);
-		rotationMatrix = transform.setFromEulerAngles(yaw, pitch, roll).cpy();
-		transform.setToTranslationAndScaling(x, y, z, scaleX, scaleY, scaleZ);
-		transform.mul(rotationMatrix);
+		rotationChanged();
+	}
+	
+	/** Rotates the actor3d by the specified rotation, which is applied after the current one. */
+	public void rotate(Quaternion rotation){
+		this.rotation.mulLeft(rotation);
+		eulerDirty = true;
+		invalidateTransform();
+	}
+	
+	/** Rebuilds the rotation from the yaw, pitch and roll after one of them was changed. */
+	private void rotationChanged(){
+		rotation.setEulerAngles(yaw, pitch, roll);
+		invalidateTransform();
+	}
+	
+	/** Derives the yaw, pitch and roll from the rotation if it was set directly since they were last computed. */
+	private void validateEuler(){
+		if (!eulerDirty) return;
+		yaw = getYaw(rotation);
+		pitch = getPitch(rotation);
+		roll = getRoll(rotation);
+		eulerDirty = false;
 	}
 	
 	public float getYaw(){
+		validateEuler();
 		return yaw;
 	}
 	
 	public float getPitch(){
+		validateEuler();
 		return pitch;
 	}
 	
 	public float getRoll(){
+		validateEuler();
 		return roll;
 	}
 	
@@ -339,14 +585,14 @@ public class Actor3d extends ModelInstance implements Disposable {
 		this.scaleX = scaleX;
 		this.scaleY = scaleY;
 		this.scaleZ = scaleZ;
-		transform.setToScaling(scaleX, scaleY, scaleZ);
+		invalidateTransform();
 	}
 	
 	public void setScale(float scale) {
 		this.scaleX = scale;
 		this.scaleY = scale;
 		this.scaleZ = scale;
-		transform.setToScaling(scaleX, scaleY, scaleZ);
+		invalidateTransform();
 	}
 	
 	/** Adds the specified scale to the current scale. */
@@ -354,20 +600,20 @@ public class Actor3d extends ModelInstance implements Disposable {
 		scaleX += scale;
 		scaleY += scale;
 		scaleZ += scale;
-		transform.scl(scale); // re-implement this
+		invalidateTransform();
 	}
 	
 	public void scale(float scaleX, float scaleY, float scaleZ) {
 		this.scaleX += scaleX;
 		this.scaleY += scaleY;
 		this.scaleZ += scaleZ;
-		transform.scl(scaleX, scaleY, scaleZ); // re-implement this
+		invalidateTransform();
 	}
 	
 	
 	public void setX (float x) {
 		this.x = x;
-		transform.setToTranslation(x, y, z);
+		invalidateTransform();
 	}
 	
 	public float getX () {
@@ -376,7 +622,7 @@ public class Actor3d extends ModelInstance implements Disposable {
 	
 	public void setY (float y) {
 		this.y = y;
-		transform.setToTranslation(x, y, z);
+		invalidateTransform();
 	}
 	
 	public float getY () {
@@ -385,7 +631,7 @@ public class Actor3d extends ModelInstance implements Disposable {
 	
 	public void setZ (float z) {
 		this.z = z;
-		transform.setToTranslation(x, y, z);
+		invalidateTransform();
 	}
 	
 	public float getZ (){
@@ -394,7 +640,7 @@ public class Actor3d extends ModelInstance implements Disposable {
 	
 	public void setScaleX (float scaleX) {
 		this.scaleX = scaleX;
-		transform.scale(scaleX, scaleY, scaleZ);
+		invalidateTransform();
 	}
 	
 	public float getScaleX () {
@@ -403,7 +649,7 @@ public class Actor3d extends ModelInstance implements Disposable {
 	
 	public void setScaleY (float scaleY) {
 		this.scaleY = scaleY;
-		transform.scale(scaleX, scaleY, scaleZ);
+		invalidateTransform();
 	}
 	
 	public float getScaleY () {
@@ -411,14 +657,117 @@ public class Actor3d extends ModelInstance implements Disposable {
 	}
 	
 	public void setScaleZ (float scaleZ) {
-		this.scaleY = scaleZ;
-		transform.scale(scaleX, scaleY, scaleZ);
+		this.scaleZ = scaleZ;
+		invalidateTransform();
 	}
 	
 	public float getScaleZ () {
 		return scaleZ;
 	}
-
+	
+	/** Marks the local transform as changed. The local and world transforms are rebuilt lazily the next time they are needed. */
+	protected void invalidateTransform () {
+		localDirty = true;
+		if (transformSlot != -1) stage3d.getTransformStore().setLocal(transformSlot, this);
+		if (stage3d != null) stage3d.sceneChanged();
+		invalidateWorldTransform();
+	}
+	
+	/** Marks the world transform as changed, typically because an ascendant moved. The descendants of a dirty actor3d are
+	 * always dirty as well, see {@link Group3d#invalidateWorldTransform()}. */
+	void invalidateWorldTransform () {
+		worldDirty = true;
+		if (parent != null) parent.invalidateChildren();
+	}
+	
+	/** Recomputes the local and world transforms if they were invalidated since the last call. This does no matrix work at all
+	 * when neither this actor3d nor any of its ascendants changed, so it is cheap to call every frame. */
+	public void validateTransform () {
+		if (!worldDirty) return;
+		if (localDirty) {
+			TransformStore.setToTranslationRotationScale(localTransform.val, 0, x, y, z, rotation.x, rotation.y, rotation.z,
+				rotation.w, scaleX, scaleY, scaleZ);
+			localDirty = false;
+		}
+		if (parent != null) {
+			parent.validateTransform();
+			transform.set(parent.transform).mul(localTransform);
+		}
+		else
+			transform.set(localTransform);
+		worldDirty = false;
+		updateWorldBounds();
+		if (stage3d != null) stage3d.worldBoundsChanged(this);
+	}
+	
+	/** Called by the {@link TransformStore} after it wrote both transforms of this actor3d. */
+	void transformValidated () {
+		localDirty = false;
+		worldDirty = false;
+		updateWorldBounds();
+		if (stage3d != null) stage3d.worldBoundsChanged(this);
+	}
+	
+	/** Validates the transform and world bounds of this actor3d. Groups also validate their descendants. This is called for the
+	 * whole stage3d at the start of {@link Stage3d#draw()}. */
+	public void validate () {
+		validateTransform();
+	}
+	
+	/** Recomputes the world space bounds from the world transform. Called every time the world transform changed. Must only
+	 * touch the state of this actor3d, because it may run on a worker thread, see {@link Stage3d#enableParallelUpdate()}. */
+	protected void updateWorldBounds () {
+		final ModelBounds bounds = this.bounds;
+		if (bounds.isEmpty()) {
+			transform.getTranslation(worldCenter);
+			worldRadius = 0;
+			worldBounds.inf();
+			return;
+		}
+		final float[] val = transform.val;
+		worldCenter.set(center).mul(transform);
+		// The sphere grows with the largest axis scale, whatever the rotation.
+		final float scaleX2 = Vector3.len2(val[Matrix4.M00], val[Matrix4.M10], val[Matrix4.M20]);
+		final float scaleY2 = Vector3.len2(val[Matrix4.M01], val[Matrix4.M11], val[Matrix4.M21]);
+		final float scaleZ2 = Vector3.len2(val[Matrix4.M02], val[Matrix4.M12], val[Matrix4.M22]);
+		worldRadius = radius * (float)Math.sqrt(Math.max(scaleX2, Math.max(scaleY2, scaleZ2)));
+		// The box is the tightest axis aligned box around the transformed oriented model box: each half extent is the sum of the
+		// transformed box axes, scaled by their half extents, projected on that world axis.
+		final Vector3 c = bounds.boxCenter;
+		final float cx = val[Matrix4.M00] * c.x + val[Matrix4.M01] * c.y + val[Matrix4.M02] * c.z + val[Matrix4.M03];
+		final float cy = val[Matrix4.M10] * c.x + val[Matrix4.M11] * c.y + val[Matrix4.M12] * c.z + val[Matrix4.M13];
+		final float cz = val[Matrix4.M20] * c.x + val[Matrix4.M21] * c.y + val[Matrix4.M22] * c.z + val[Matrix4.M23];
+		float ex = 0, ey = 0, ez = 0;
+		for (int i = 0; i < 3; i++) {
+			final Vector3 axis = bounds.axes[i];
+			final float h = i == 0 ? bounds.halfExtents.x : (i == 1 ? bounds.halfExtents.y : bounds.halfExtents.z);
+			ex += Math.abs(val[Matrix4.M00] * axis.x + val[Matrix4.M01] * axis.y + val[Matrix4.M02] * axis.z) * h;
+			ey += Math.abs(val[Matrix4.M10] * axis.x + val[Matrix4.M11] * axis.y + val[Matrix4.M12] * axis.z) * h;
+			ez += Math.abs(val[Matrix4.M20] * axis.x + val[Matrix4.M21] * axis.y + val[Matrix4.M22] * axis.z) * h;
+		}
+		worldBounds.min.set(cx - ex, cy - ey, cz - ez);
+		worldBounds.max.set(cx + ex, cy + ey, cz + ez);
+		worldBounds.set(worldBounds.min, worldBounds.max);
+	}
+	
+	/** Returns the axis aligned bounds in world space. They are empty if the actor3d has nothing to draw. */
+	public BoundingBox getWorldBounds () {
+		validate();
+		return worldBounds;
+	}
+	
+	/** Returns true if the box contains nothing, eg it was {@link BoundingBox#inf() reset} and never extended. Unlike
+	 * {@link BoundingBox#isValid()} a flat box, such as the bounds of a floor, is not empty. */
+	static boolean isEmpty (BoundingBox box) {
+		return box.min.x > box.max.x || box.min.y > box.max.y || box.min.z > box.max.z;
+	}
+	
+	/** Returns the radius of the bounding sphere in world space, centered on {@link #worldCenter}. */
+	public float getWorldRadius () {
+		validateTransform();
+		return worldRadius;
+	}
+	
 	/** Sets a name for easier identification of the actor3d in application code.
 	 * @see Group#findActor(String) */
 	public void setName (String name) {
@@ -452,20 +801,88 @@ public class Actor3d extends ModelInstance implements Disposable {
 			model.materials.add(new Material("Color", ca));
 	}
 	
+	/** Returns the world transform, recomputing it first if it is out of date. */
 	public Matrix4 getTransform(){
+		validateTransform();
 		return transform;
 	}
 	
+	/** Returns the transform relative to the parent, recomputing it first if it is out of date. */
+	public Matrix4 getLocalTransform(){
+		validateTransform();
+		return localTransform;
+	}
+	
+	/** Sets the position, rotation and scale of this actor3d from the specified transform relative to the parent. */
 	public void setTransform(Matrix4 transform){
-		this.transform = transform;
+		final float[] val = transform.val;
+		x = val[Matrix4.M03];
+		y = val[Matrix4.M13];
+		z = val[Matrix4.M23];
+		scaleX = Vector3.len(val[Matrix4.M00], val[Matrix4.M10], val[Matrix4.M20]);
+		scaleY = Vector3.len(val[Matrix4.M01], val[Matrix4.M11], val[Matrix4.M21]);
+		scaleZ = Vector3.len(val[Matrix4.M02], val[Matrix4.M12], val[Matrix4.M22]);
+		rotation.setFromAxes(val[Matrix4.M00] / scaleX, val[Matrix4.M01] / scaleY, val[Matrix4.M02] / scaleZ,
+			val[Matrix4.M10] / scaleX, val[Matrix4.M11] / scaleY, val[Matrix4.M12] / scaleZ,
+			val[Matrix4.M20] / scaleX, val[Matrix4.M21] / scaleY, val[Matrix4.M22] / scaleZ);
+		eulerDirty = true;
+		invalidateTransform();
+	}
+	
+	/** @return the yaw in degrees, around the y axis, of the specified rotation */
+	static float getYaw (Quaternion q) {
+		return getGimbalPole(q) == 0 ? (float)Math.atan2(2f * (q.y * q.w + q.x * q.z), 1f - 2f * (q.y * q.y + q.x * q.x))
+			* MathUtils.radiansToDegrees : 0f;
+	}
+	
+	/** @return the pitch in degrees, around the x axis, of the specified rotation */
+	static float getPitch (Quaternion q) {
+		final int pole = getGimbalPole(q);
+		return pole == 0 ? (float)Math.asin(MathUtils.clamp(2f * (q.w * q.x - q.z * q.y), -1f, 1f))
+			* MathUtils.radiansToDegrees : pole * 90f;
+	}
+	
+	/** @return the roll in degrees, around the z axis, of the specified rotation */
+	static float getRoll (Quaternion q) {
+		final int pole = getGimbalPole(q);
+		return pole == 0 ? (float)Math.atan2(2f * (q.w * q.z + q.y * q.x), 1f - 2f * (q.x * q.x + q.z * q.z))
+			* MathUtils.radiansToDegrees : pole * 2f * (float)Math.atan2(q.y, q.w) * MathUtils.radiansToDegrees;
+	}
+	
+	private static int getGimbalPole (Quaternion q) {
+		final float t = q.y * q.x + q.z * q.w;
+		return t > 0.499f ? 1 : (t < -0.499f ? -1 : 0);
 	}
 	
+	/** Returns the axis aligned bounds in model space. They are usually shared with other actor3ds and must not be modified, use
+	 * {@link #setBoundingBox(BoundingBox)} instead. */
 	public BoundingBox getBoundingBox(){
-		return boundBox;
+		return bounds.box;
 	}
 	
+	/** Sets the bounds in model space of this actor3d only, from which the world bounds used for culling and picking are
+	 * derived. The bounding sphere becomes the one around the box. */
 	public void setBoundingBox(BoundingBox box){
-		boundBox = box;
+		setBounds(new ModelBounds(box));
+	}
+	
+	public ModelBounds getBounds(){
+		return bounds;
+	}
+	
+	/** Sets the bounds in model space, from which the world bounds used for culling and picking are derived. */
+	public void setBounds(ModelBounds bounds){
+		this.bounds = bounds;
+		if (bounds.isEmpty()) {
+			center.set(0, 0, 0);
+			dimensions.set(0, 0, 0);
+			radius = 0;
+		} else {
+			center.set(bounds.center);
+			dimensions.set(bounds.box.getDimensions());
+			radius = bounds.radius;
+		}
+		invalidateWorldTransform();
 	}
 	
 	public AnimationController getAnimation(){
@@ -474,6 +891,8 @@ public class Actor3d extends ModelInstance implements Disposable {
 
 	@Override
 	public void dispose() {
+		ModelBounds.remove(model);
+		TriangleTree.remove(model);
 		model.dispose();
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,407 @@
+package scene3d;
+
+import scene3d.utils.RayUtils;
+
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.math.collision.Ray;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectIntMap;
+
+/** A dynamic bounding volume hierarchy over the world bounds of actor3ds. Each actor3d is a leaf whose box is its world bounds
+ * grown by a {@link #margin}, so that small movements don't touch the tree. When an actor3d leaves its box, the leaf is removed and
+ * inserted again next to the sibling that grows the tree the least, and the nodes on the way back to the root are rebalanced with
+ * rotations, which keeps the height logarithmic.
+ * <p>
+ * The nodes live in parallel arrays and are recycled through a free list, so updates and queries don't allocate.
+ * {@link Stage3d} uses one for {@link Stage3d#pick(Ray)}. */
+public class BoundsTree implements SpatialIndex3d {
+	static private final int NULL = -1;
+
+	/** How much a leaf box is grown on each side, as a fraction of the largest dimension of the world bounds. */
+	public float margin = 0.1f;
+
+	/** minX, minY, minZ, maxX, maxY, maxZ per node. */
+	private float[] boxes;
+	/** The parent of a node, or the next free node when the node is in the free list. */
+	private int[] parents;
+	private int[] children1, children2, heights;
+	private Actor3d[] actors;
+	private int capacity, freeList = NULL, root = NULL;
+	private final ObjectIntMap<Actor3d> leaves = new ObjectIntMap<Actor3d>();
+
+	private int[] stack = new int[64];
+	private float[] stackDistances = new float[64];
+
+	public BoundsTree () {
+		this(64);
+	}
+
+	public BoundsTree (int capacity) {
+		resize(Math.max(capacity, 16));
+	}
+
+	public void update (Actor3d actor3d) {
+		final BoundingBox bounds = actor3d.worldBounds;
+		if (Actor3d.isEmpty(bounds)) {
+			remove(actor3d);
+			return;
+		}
+		int leaf = leaves.get(actor3d, NULL);
+		if (leaf != NULL) {
+			final int i = leaf * 6;
+			if (boxes[i] <= bounds.min.x && boxes[i + 1] <= bounds.min.y && boxes[i + 2] <= bounds.min.z
+				&& boxes[i + 3] >= bounds.max.x && boxes[i + 4] >= bounds.max.y && boxes[i + 5] >= bounds.max.z) return;
+			removeLeaf(leaf);
+		} else {
+			leaf = allocateNode();
+			actors[leaf] = actor3d;
+			leaves.put(actor3d, leaf);
+		}
+		final float grow = margin * Math.max(bounds.max.x - bounds.min.x, Math.max(bounds.max.y - bounds.min.y,
+			bounds.max.z - bounds.min.z));
+		final int i = leaf * 6;
+		boxes[i] = bounds.min.x - grow;
+		boxes[i + 1] = bounds.min.y - grow;
+		boxes[i + 2] = bounds.min.z - grow;
+		boxes[i + 3] = bounds.max.x + grow;
+		boxes[i + 4] = bounds.max.y + grow;
+		boxes[i + 5] = bounds.max.z + grow;
+		insertLeaf(leaf);
+	}
+
+	public void remove (Actor3d actor3d) {
+		final int leaf = leaves.remove(actor3d, NULL);
+		if (leaf == NULL) return;
+		removeLeaf(leaf);
+		freeNode(leaf);
+	}
+
+	public void clear () {
+		leaves.clear();
+		root = NULL;
+		for (int i = 0; i < capacity; i++)
+			actors[i] = null;
+		linkFreeNodes(0);
+	}
+
+	/** Finds the nearest actor3d hit by the ray, whose direction must be normalized, and stores it in the result if it is closer
+	 * than the hit already there. Subtrees whose box is entered farther away than the nearest hit so far are skipped, and of two
+	 * children the nearer one is visited first. Invisible actor3ds are ignored.
+	 * @return true if the result was changed */
+	public boolean pick (Ray ray, PickResult result) {
+		if (root == NULL) return false;
+		final float ox = ray.origin.x, oy = ray.origin.y, oz = ray.origin.z;
+		final float ix = 1f / ray.direction.x, iy = 1f / ray.direction.y, iz = 1f / ray.direction.z;
+		final float[] boxes = this.boxes;
+		boolean hit = false;
+		float distance = intersect(root, ox, oy, oz, ix, iy, iz);
+		if (distance < 0) return false;
+		int top = 0;
+		stack[top] = root;
+		stackDistances[top++] = distance;
+		while (top > 0) {
+			final int node = stack[--top];
+			if (stackDistances[top] >= result.distance) continue;
+			final int child1 = children1[node];
+			if (child1 == NULL) {
+				final Actor3d actor3d = actors[node];
+				if (actor3d.isVisibleInHierarchy() && actor3d.intersect(ray, result)) hit = true;
+				continue;
+			}
+			final int child2 = children2[node];
+			final float distance1 = intersect(child1, ox, oy, oz, ix, iy, iz);
+			final float distance2 = intersect(child2, ox, oy, oz, ix, iy, iz);
+			if (top + 2 > stack.length) growStack();
+			// Push the farther child first so that the nearer one is popped first.
+			if (distance1 <= distance2) {
+				if (distance2 >= 0) push(top++, child2, distance2);
+				if (distance1 >= 0) push(top++, child1, distance1);
+			} else {
+				if (distance1 >= 0) push(top++, child1, distance1);
+				if (distance2 >= 0) push(top++, child2, distance2);
+			}
+		}
+		return hit;
+	}
+
+	/** Adds the actor3ds whose leaf box overlaps the box to the array. The leaf boxes are slightly larger than the world bounds,
+	 * so the caller should test the world bounds when that matters. */
+	public Array<Actor3d> query (BoundingBox box, Array<Actor3d> out) {
+		if (root == NULL) return out;
+		final float minX = box.min.x, minY = box.min.y, minZ = box.min.z, maxX = box.max.x, maxY = box.max.y, maxZ = box.max.z;
+		final float[] boxes = this.boxes;
+		int top = 0;
+		stack[top++] = root;
+		while (top > 0) {
+			final int node = stack[--top];
+			final int i = node * 6;
+			if (boxes[i] > maxX || boxes[i + 1] > maxY || boxes[i + 2] > maxZ || boxes[i + 3] < minX || boxes[i + 4] < minY
+				|| boxes[i + 5] < minZ) continue;
+			if (children1[node] == NULL) {
+				out.add(actors[node]);
+				continue;
+			}
+			if (top + 2 > stack.length) growStack();
+			stack[top++] = children1[node];
+			stack[top++] = children2[node];
+		}
+		return out;
+	}
+
+	/** Returns the number of actor3ds in the tree. */
+	public int size () {
+		return leaves.size;
+	}
+
+	/** Returns the height of the tree, 0 for a single leaf or -1 when empty. */
+	public int getHeight () {
+		return root == NULL ? -1 : heights[root];
+	}
+
+	private void push (int index, int node, float distance) {
+		stack[index] = node;
+		stackDistances[index] = distance;
+	}
+
+	private float intersect (int node, float ox, float oy, float oz, float ix, float iy, float iz) {
+		final int i = node * 6;
+		return RayUtils.intersectBox(ox, oy, oz, ix, iy, iz, boxes[i], boxes[i + 1], boxes[i + 2], boxes[i + 3], boxes[i + 4],
+			boxes[i + 5]);
+	}
+
+	private void insertLeaf (int leaf) {
+		if (root == NULL) {
+			root = leaf;
+			parents[leaf] = NULL;
+			return;
+		}
+		// Walk down to the sibling that adds the least surface to the tree.
+		final float[] boxes = this.boxes;
+		final int l = leaf * 6;
+		int index = root;
+		while (children1[index] != NULL) {
+			final int child1 = children1[index], child2 = children2[index];
+			final float area = area(index);
+			final float combinedArea = unionArea(index, l);
+			final float cost = 2f * combinedArea;
+			// The cost of pushing the leaf further down, which grows this node.
+			final float inheritanceCost = 2f * (combinedArea - area);
+			float cost1 = unionArea(child1, l) + inheritanceCost;
+			if (children1[child1] != NULL) cost1 -= area(child1);
+			float cost2 = unionArea(child2, l) + inheritanceCost;
+			if (children1[child2] != NULL) cost2 -= area(child2);
+			if (cost < cost1 && cost < cost2) break;
+			index = cost1 < cost2 ? child1 : child2;
+		}
+		final int sibling = index;
+		final int oldParent = parents[sibling];
+		final int newParent = allocateNode();
+		parents[newParent] = oldParent;
+		setUnion(newParent, sibling, leaf);
+		heights[newParent] = heights[sibling] + 1;
+		children1[newParent] = sibling;
+		children2[newParent] = leaf;
+		parents[sibling] = newParent;
+		parents[leaf] = newParent;
+		if (oldParent != NULL) {
+			if (children1[oldParent] == sibling)
+				children1[oldParent] = newParent;
+			else
+				children2[oldParent] = newParent;
+		} else
+			root = newParent;
+		refit(parents[leaf]);
+	}
+
+	private void removeLeaf (int leaf) {
+		if (leaf == root) {
+			root = NULL;
+			return;
+		}
+		final int parent = parents[leaf];
+		final int grandParent = parents[parent];
+		final int sibling = children1[parent] == leaf ? children2[parent] : children1[parent];
+		freeNode(parent);
+		if (grandParent != NULL) {
+			if (children1[grandParent] == parent)
+				children1[grandParent] = sibling;
+			else
+				children2[grandParent] = sibling;
+			parents[sibling] = grandParent;
+			refit(grandParent);
+		} else {
+			root = sibling;
+			parents[sibling] = NULL;
+		}
+	}
+
+	/** Rebalances and recomputes the boxes and heights from the node up to the root. */
+	private void refit (int index) {
+		while (index != NULL) {
+			index = balance(index);
+			final int child1 = children1[index], child2 = children2[index];
+			heights[index] = 1 + Math.max(heights[child1], heights[child2]);
+			setUnion(index, child1, child2);
+			index = parents[index];
+		}
+	}
+
+	/** Rotates the taller grandchild of node a up if its children differ in height by more than one.
+	 * @return the node that took the place of a */
+	private int balance (int a) {
+		if (children1[a] == NULL || heights[a] < 2) return a;
+		final int b = children1[a], c = children2[a];
+		final int balance = heights[c] - heights[b];
+		if (balance > 1) {
+			final int f = children1[c], g = children2[c];
+			replaceChild(a, c);
+			children1[c] = a;
+			if (heights[f] > heights[g]) {
+				children2[c] = f;
+				children2[a] = g;
+				parents[g] = a;
+				setUnion(a, b, g);
+				setUnion(c, a, f);
+				heights[a] = 1 + Math.max(heights[b], heights[g]);
+				heights[c] = 1 + Math.max(heights[a], heights[f]);
+			} else {
+				children2[c] = g;
+				children2[a] = f;
+				parents[f] = a;
+				setUnion(a, b, f);
+				setUnion(c, a, g);
+				heights[a] = 1 + Math.max(heights[b], heights[f]);
+				heights[c] = 1 + Math.max(heights[a], heights[g]);
+			}
+			return c;
+		}
+		if (balance < -1) {
+			final int d = children1[b], e = children2[b];
+			replaceChild(a, b);
+			children1[b] = a;
+			if (heights[d] > heights[e]) {
+				children2[b] = d;
+				children1[a] = e;
+				parents[e] = a;
+				setUnion(a, c, e);
+				setUnion(b, a, d);
+				heights[a] = 1 + Math.max(heights[c], heights[e]);
+				heights[b] = 1 + Math.max(heights[a], heights[d]);
+			} else {
+				children2[b] = e;
+				children1[a] = d;
+				parents[d] = a;
+				setUnion(a, c, d);
+				setUnion(b, a, e);
+				heights[a] = 1 + Math.max(heights[c], heights[d]);
+				heights[b] = 1 + Math.max(heights[a], heights[e]);
+			}
+			return b;
+		}
+		return a;
+	}
+
+	/** Puts the child of a in the place of a, and makes it the parent of a. */
+	private void replaceChild (int a, int child) {
+		final int parent = parents[a];
+		parents[child] = parent;
+		parents[a] = child;
+		if (parent == NULL)
+			root = child;
+		else if (children1[parent] == a)
+			children1[parent] = child;
+		else
+			children2[parent] = child;
+	}
+
+	/** Half the surface of the box of the node. */
+	private float area (int node) {
+		final int i = node * 6;
+		final float dx = boxes[i + 3] - boxes[i], dy = boxes[i + 4] - boxes[i + 1], dz = boxes[i + 5] - boxes[i + 2];
+		return dx * dy + dy * dz + dz * dx;
+	}
+
+	/** Half the surface of the box around the node and the box at offset l. */
+	private float unionArea (int node, int l) {
+		final float[] boxes = this.boxes;
+		final int i = node * 6;
+		final float dx = Math.max(boxes[i + 3], boxes[l + 3]) - Math.min(boxes[i], boxes[l]);
+		final float dy = Math.max(boxes[i + 4], boxes[l + 4]) - Math.min(boxes[i + 1], boxes[l + 1]);
+		final float dz = Math.max(boxes[i + 5], boxes[l + 5]) - Math.min(boxes[i + 2], boxes[l + 2]);
+		return dx * dy + dy * dz + dz * dx;
+	}
+
+	private void setUnion (int node, int a, int b) {
+		final float[] boxes = this.boxes;
+		final int i = node * 6, ia = a * 6, ib = b * 6;
+		boxes[i] = Math.min(boxes[ia], boxes[ib]);
+		boxes[i + 1] = Math.min(boxes[ia + 1], boxes[ib + 1]);
+		boxes[i + 2] = Math.min(boxes[ia + 2], boxes[ib + 2]);
+		boxes[i + 3] = Math.max(boxes[ia + 3], boxes[ib + 3]);
+		boxes[i + 4] = Math.max(boxes[ia + 4], boxes[ib + 4]);
+		boxes[i + 5] = Math.max(boxes[ia + 5], boxes[ib + 5]);
+	}
+
+	private int allocateNode () {
+		if (freeList == NULL) resize(capacity * 2);
+		final int node = freeList;
+		freeList = parents[node];
+		parents[node] = NULL;
+		children1[node] = NULL;
+		children2[node] = NULL;
+		heights[node] = 0;
+		return node;
+	}
+
+	private void freeNode (int node) {
+		actors[node] = null;
+		heights[node] = -1;
+		parents[node] = freeList;
+		freeList = node;
+	}
+
+	private void resize (int newCapacity) {
+		final int oldCapacity = capacity;
+		boxes = copy(boxes, newCapacity * 6);
+		parents = copy(parents, newCapacity);
+		children1 = copy(children1, newCapacity);
+		children2 = copy(children2, newCapacity);
+		heights = copy(heights, newCapacity);
+		Actor3d[] newActors = new Actor3d[newCapacity];
+		if (actors != null) System.arraycopy(actors, 0, newActors, 0, oldCapacity);
+		actors = newActors;
+		capacity = newCapacity;
+		linkFreeNodes(oldCapacity);
+	}
+
+	/** Puts the nodes from the index to the capacity in the free list. They must not be in use. */
+	private void linkFreeNodes (int from) {
+		if (from == 0) freeList = NULL;
+		for (int i = capacity - 1; i >= from; i--) {
+			parents[i] = freeList;
+			heights[i] = -1;
+			freeList = i;
+		}
+	}
+
+	private void growStack () {
+		int[] newStack = new int[stack.length * 2];
+		System.arraycopy(stack, 0, newStack, 0, stack.length);
+		stack = newStack;
+		float[] newDistances = new float[stackDistances.length * 2];
+		System.arraycopy(stackDistances, 0, newDistances, 0, stackDistances.length);
+		stackDistances = newDistances;
+	}
+
+	static private float[] copy (float[] array, int length) {
+		float[] newArray = new float[length];
+		if (array != null) System.arraycopy(array, 0, newArray, 0, Math.min(array.length, length));
+		return newArray;
+	}
+
+	static private int[] copy (int[] array, int length) {
+		int[] newArray = new int[length];
+		if (array != null) System.arraycopy(array, 0, newArray, 0, Math.min(array.length, length));
+		return newArray;
+	}
+}
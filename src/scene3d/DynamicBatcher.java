@@ -0,0 +1,381 @@
+package scene3d;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import scene3d.utils.MaterialIds;
+import scene3d.utils.VertexUtils;
+
+import com.badlogic.gdx.graphics.GL10;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.Mesh.VertexDataType;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.VertexAttributes.Usage;
+import com.badlogic.gdx.graphics.g3d.Environment;
+import com.badlogic.gdx.graphics.g3d.Material;
+import com.badlogic.gdx.graphics.g3d.ModelBatch;
+import com.badlogic.gdx.graphics.g3d.Renderable;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IdentityMap;
+import com.badlogic.gdx.utils.Pool;
+
+/** Merges the small mesh parts of the drawn actor3ds into a few meshes every frame, so that many small props with different
+ * meshes but equal materials cost one draw call. The vertices of each part are moved into world space on the CPU and written
+ * into vertex buffers that are reused from frame to frame.
+ * <p>
+ * Only actor3ds whose parts all have at most {@link #setMaxPartVertices(int) max part vertices} indices are taken, others are
+ * drawn as usual. Skinned parts, blended materials, which must be drawn back to front, and triangle strips or fans are never
+ * merged. The vertices of a part are read from its mesh the first time it is seen and kept, call {@link #clearCache()} after
+ * changing the vertices of a mesh.
+ * <p>
+ * Use {@link Stage3d#enableDynamicBatching()} to have the stage3d draw its actor3ds through it. The transform loop doesn't
+ * allocate, and is split over the fork-join pool of the stage3d when {@link Stage3d#enableParallelUpdate() parallel updates}
+ * are enabled. */
+public class DynamicBatcher {
+	/** The most vertices short indices can address. */
+	static private final int MAX_VERTICES = 1 << 16;
+	/** Below this many parts the transforms are not worth splitting over threads. */
+	static private final int PARALLEL_THRESHOLD = 256;
+
+	private int maxPartVertices = 300, maxBatchVertices = MAX_VERTICES;
+	private VertexDataType vertexDataType = VertexDataType.VertexBufferObject;
+
+	private final IdentityMap<Mesh, Array<Part>> parts = new IdentityMap<Mesh, Array<Part>>();
+	private final MaterialIds materialIds = new MaterialIds();
+	private final Array<Batch> batches = new Array<Batch>(false, 16, Batch.class);
+	private Entry[] entries = new Entry[64];
+	private int entryCount;
+
+	private final Array<Renderable> renderables = new Array<Renderable>(false, 16, Renderable.class);
+	private final Pool<Renderable> pool = new Pool<Renderable>() {
+		protected Renderable newObject () {
+			return new Renderable();
+		}
+	};
+	private TransformTask[] tasks = new TransformTask[0];
+	private final RecursiveAction transformAll = new RecursiveAction() {
+		protected void compute () {
+			invokeAll(tasks);
+		}
+	};
+
+	/** Starts collecting the parts of a frame and disposes of the batches that got none during the last one. */
+	public void begin () {
+		for (int i = batches.size - 1; i >= 0; i--) {
+			final Batch batch = batches.get(i);
+			if (batch.partCount == 0) {
+				batches.removeIndex(i);
+				if (batch.mesh != null) batch.mesh.dispose();
+			}
+			batch.clear();
+		}
+		for (int i = 0; i < entryCount; i++)
+			entries[i].part = null;
+		entryCount = 0;
+		// Start the ids over once in a while, so that the copies of materials no longer drawn don't pile up, with the batches that
+		// were found by them.
+		if (materialIds.getIdCount() > 4096) {
+			materialIds.clear();
+			for (int i = 0; i < batches.size; i++)
+				if (batches.get(i).mesh != null) batches.get(i).mesh.dispose();
+			batches.clear();
+		}
+	}
+
+	/** Adds the parts of the actor3d to the batches, if it can be merged.
+	 * @return False if the actor3d has to be drawn on its own. */
+	public boolean add (Actor3d actor3d, Environment environment) {
+		final Array<Renderable> renderables = this.renderables;
+		actor3d.getRenderables(renderables, pool);
+		boolean mergeable = renderables.size > 0;
+		for (int i = 0; i < renderables.size && mergeable; i++) {
+			final Renderable renderable = renderables.get(i);
+			final int type = renderable.primitiveType;
+			mergeable = renderable.bones == null && (type == GL10.GL_TRIANGLES || type == GL10.GL_LINES || type == GL10.GL_POINTS)
+				&& renderable.meshPartSize <= maxPartVertices && !RenderQueue.isBlended(renderable.material)
+				&& renderable.mesh.getVertexAttribute(Usage.Position) != null;
+		}
+		if (mergeable) {
+			for (int i = 0; i < renderables.size; i++) {
+				final Renderable renderable = renderables.get(i);
+				final Part part = getPart(renderable.mesh, renderable.meshPartOffset, renderable.meshPartSize);
+				final Batch batch = findBatch(renderable, environment, part.vertexCount);
+				if (entryCount == entries.length) {
+					final Entry[] newEntries = new Entry[entries.length * 2];
+					System.arraycopy(entries, 0, newEntries, 0, entryCount);
+					entries = newEntries;
+				}
+				Entry entry = entries[entryCount];
+				if (entry == null) entry = entries[entryCount] = new Entry();
+				entryCount++;
+				entry.part = part;
+				entry.batch = batch;
+				entry.vertexOffset = batch.vertexCount;
+				entry.indexOffset = batch.indexCount;
+				System.arraycopy(renderable.worldTransform.val, 0, entry.transform, 0, 16);
+				batch.vertexCount += part.vertexCount;
+				batch.indexCount += part.indices.length;
+				batch.partCount++;
+			}
+		}
+		pool.freeAll(renderables);
+		renderables.clear();
+		return mergeable;
+	}
+
+	/** Returns a batch for the material and layout with room for the vertices, the first one for them in this frame. A material
+	 * changed in place, eg by {@link Actor3d#setColor(com.badlogic.gdx.graphics.Color)}, keeps its old id, so the material of a
+	 * batch that already has parts is compared before the part joins it. */
+	private Batch findBatch (Renderable renderable, Environment environment, int vertexCount) {
+		final int materialId = materialIds.get(renderable.material);
+		final VertexAttributes attributes = renderable.mesh.getVertexAttributes();
+		final Batch[] items = batches.items;
+		for (int i = 0, n = batches.size; i < n; i++) {
+			final Batch batch = items[i];
+			if (batch.materialId != materialId || batch.primitiveType != renderable.primitiveType
+				|| batch.environment != environment || !batch.attributes.equals(attributes)) continue;
+			if (batch.partCount > 0 && !equal(batch.material, renderable.material)) continue;
+			if (batch.vertexCount + vertexCount <= maxBatchVertices) {
+				if (batch.partCount == 0) batch.material = renderable.material;
+				return batch;
+			}
+		}
+		final Batch batch = new Batch(renderable.material, materialId, attributes, renderable.primitiveType, environment);
+		batches.add(batch);
+		return batch;
+	}
+
+	static private boolean equal (Material a, Material b) {
+		return a == b || (a != null && a.equals(b));
+	}
+
+	/** Returns the vertices and indices of the mesh part, read once and kept. */
+	private Part getPart (Mesh mesh, int offset, int size) {
+		Array<Part> meshParts = parts.get(mesh);
+		if (meshParts == null) {
+			meshParts = new Array<Part>(false, 4, Part.class);
+			parts.put(mesh, meshParts);
+		}
+		for (int i = 0, n = meshParts.size; i < n; i++) {
+			final Part part = meshParts.get(i);
+			if (part.offset == offset && part.size == size) return part;
+		}
+		final Part part = new Part(mesh, offset, size);
+		meshParts.add(part);
+		return part;
+	}
+
+	/** Transforms the vertices of all parts on the calling thread and uploads the batches. */
+	public void end () {
+		end(null);
+	}
+
+	/** Transforms the vertices of all parts, split over the pool if there are enough of them, and uploads the batches.
+	 * @param pool May be null to do it all on the calling thread. */
+	public void end (ForkJoinPool pool) {
+		final Batch[] items = batches.items;
+		for (int i = 0, n = batches.size; i < n; i++)
+			items[i].ensureCapacity();
+		if (pool == null || entryCount < PARALLEL_THRESHOLD)
+			transform(0, entryCount);
+		else {
+			final int parallelism = pool.getParallelism();
+			if (tasks.length != parallelism) {
+				tasks = new TransformTask[parallelism];
+				for (int i = 0; i < parallelism; i++)
+					tasks[i] = new TransformTask();
+			}
+			for (int i = 0; i < parallelism; i++) {
+				final TransformTask task = tasks[i];
+				task.reinitialize();
+				task.start = (int)((long)entryCount * i / parallelism);
+				task.end = (int)((long)entryCount * (i + 1) / parallelism);
+			}
+			transformAll.reinitialize();
+			pool.invoke(transformAll);
+		}
+		for (int i = 0, n = batches.size; i < n; i++)
+			if (items[i].partCount > 0) items[i].upload(vertexDataType);
+	}
+
+	/** Writes the transformed vertices and the shifted indices of the entries. Each entry has its own range in its batch. */
+	void transform (int start, int end) {
+		final Entry[] entries = this.entries;
+		for (int e = start; e < end; e++) {
+			final Entry entry = entries[e];
+			final Part part = entry.part;
+			final Batch batch = entry.batch;
+			VertexUtils.transform(part.vertices, 0, batch.vertices, entry.vertexOffset * batch.stride, part.vertexCount,
+				batch.attributes, entry.transform);
+			final short[] partIndices = part.indices, indices = batch.indices;
+			final int base = entry.vertexOffset;
+			for (int i = 0, at = entry.indexOffset, n = partIndices.length; i < n; i++, at++)
+				indices[at] = (short)(partIndices[i] + base);
+		}
+	}
+
+	/** Hands one renderable per batch to the model batch. Call {@link #end()} first. */
+	public void render (ModelBatch modelBatch) {
+		final Batch[] items = batches.items;
+		for (int i = 0, n = batches.size; i < n; i++)
+			if (items[i].partCount > 0) modelBatch.render(items[i].renderable);
+	}
+
+	/** Returns the number of meshes drawn this frame. */
+	public int getBatchCount () {
+		int count = 0;
+		for (int i = 0; i < batches.size; i++)
+			if (batches.get(i).partCount > 0) count++;
+		return count;
+	}
+
+	/** Returns the number of mesh parts merged this frame. */
+	public int getPartCount () {
+		return entryCount;
+	}
+
+	/** Forgets the vertices read from the meshes. */
+	public void clearCache () {
+		parts.clear();
+	}
+
+	public int getMaxPartVertices () {
+		return maxPartVertices;
+	}
+
+	/** @param maxPartVertices Mesh parts with more vertices, or indices for indexed meshes, are not merged. Default is 300. */
+	public void setMaxPartVertices (int maxPartVertices) {
+		this.maxPartVertices = Math.min(maxPartVertices, MAX_VERTICES);
+	}
+
+	public int getMaxBatchVertices () {
+		return maxBatchVertices;
+	}
+
+	/** @param maxBatchVertices The most vertices of one merged mesh, at most and by default 65536. */
+	public void setMaxBatchVertices (int maxBatchVertices) {
+		this.maxBatchVertices = Math.min(maxBatchVertices, MAX_VERTICES);
+	}
+
+	public VertexDataType getVertexDataType () {
+		return vertexDataType;
+	}
+
+	/** Sets how the merged meshes keep their vertices, vertex buffer objects by default. Vertex arrays don't need a GL context. */
+	public void setVertexDataType (VertexDataType vertexDataType) {
+		this.vertexDataType = vertexDataType;
+	}
+
+	/** Disposes of the merged meshes. */
+	public void dispose () {
+		for (int i = 0; i < batches.size; i++)
+			if (batches.get(i).mesh != null) batches.get(i).mesh.dispose();
+		batches.clear();
+	}
+
+	/** The vertices of a mesh part, with only the vertices its indices use, and its indices renumbered from 0. */
+	static private class Part {
+		final int offset, size;
+		final float[] vertices;
+		final short[] indices;
+		final int vertexCount;
+
+		Part (Mesh mesh, int offset, int size) {
+			this.offset = offset;
+			this.size = size;
+			final int stride = mesh.getVertexSize() / 4;
+			indices = new short[size];
+			if (mesh.getNumIndices() == 0) {
+				vertices = mesh.getVertices(offset * stride, size * stride, new float[size * stride]);
+				for (int i = 0; i < size; i++)
+					indices[i] = (short)i;
+				vertexCount = size;
+				return;
+			}
+			final short[] meshIndices = new short[mesh.getNumIndices()];
+			mesh.getIndices(meshIndices);
+			final float[] meshVertices = mesh.getVertices(new float[mesh.getNumVertices() * stride]);
+			final int[] remap = new int[mesh.getNumVertices()];
+			java.util.Arrays.fill(remap, -1);
+			final float[] used = new float[size * stride];
+			int count = 0;
+			for (int i = 0; i < size; i++) {
+				final int index = meshIndices[offset + i] & 0xffff;
+				if (remap[index] == -1) {
+					remap[index] = count;
+					System.arraycopy(meshVertices, index * stride, used, count * stride, stride);
+					count++;
+				}
+				indices[i] = (short)remap[index];
+			}
+			vertices = used;
+			vertexCount = count;
+		}
+	}
+
+	/** One merged mesh, rebuilt every frame from the parts of one material and vertex layout. */
+	static private class Batch {
+		Material material;
+		final int materialId;
+		final VertexAttributes attributes;
+		final int primitiveType, stride;
+		final Environment environment;
+		final Renderable renderable = new Renderable();
+		Mesh mesh;
+		float[] vertices = new float[0];
+		short[] indices = new short[0];
+		int vertexCount, indexCount, partCount;
+
+		Batch (Material material, int materialId, VertexAttributes attributes, int primitiveType, Environment environment) {
+			this.material = material;
+			this.materialId = materialId;
+			this.attributes = attributes;
+			this.primitiveType = primitiveType;
+			this.environment = environment;
+			stride = attributes.vertexSize / 4;
+		}
+
+		void clear () {
+			vertexCount = indexCount = partCount = 0;
+		}
+
+		void ensureCapacity () {
+			if (vertices.length < vertexCount * stride) vertices = new float[Math.max(vertexCount * stride, vertices.length * 2)];
+			if (indices.length < indexCount) indices = new short[Math.max(indexCount, indices.length * 2)];
+		}
+
+		void upload (VertexDataType vertexDataType) {
+			if (mesh == null || mesh.getMaxVertices() < vertexCount || mesh.getMaxIndices() < indexCount) {
+				if (mesh != null) mesh.dispose();
+				mesh = new Mesh(vertexDataType, false, Math.min(vertices.length / stride, MAX_VERTICES), indices.length,
+					VertexUtils.copy(attributes));
+			}
+			mesh.setVertices(vertices, 0, vertexCount * stride);
+			mesh.setIndices(indices, 0, indexCount);
+			renderable.mesh = mesh;
+			renderable.meshPartOffset = 0;
+			renderable.meshPartSize = indexCount;
+			renderable.primitiveType = primitiveType;
+			renderable.material = material;
+			renderable.environment = environment;
+			renderable.bones = null;
+		}
+	}
+
+	/** The transform of one part this frame and where its vertices and indices go. */
+	static private class Entry {
+		Part part;
+		Batch batch;
+		int vertexOffset, indexOffset;
+		final float[] transform = new float[16];
+	}
+
+	@SuppressWarnings("serial")
+	private class TransformTask extends RecursiveAction {
+		int start, end;
+
+		protected void compute () {
+			transform(start, end);
+		}
+	}
+}
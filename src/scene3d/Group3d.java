@@ -2,18 +2,29 @@ package scene3d;
 
 
 
+import scene3d.utils.FrustumUtils;
+
+import com.badlogic.gdx.graphics.Camera;
 import com.badlogic.gdx.graphics.g2d.Batch;
 import com.badlogic.gdx.graphics.g3d.Environment;
 import com.badlogic.gdx.graphics.g3d.Model;
 import com.badlogic.gdx.graphics.g3d.ModelBatch;
+import com.badlogic.gdx.math.Frustum;
 import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.collision.BoundingBox;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.SnapshotArray;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 
 public class Group3d extends Actor3d{
 	private final SnapshotArray<Actor3d> children = new SnapshotArray<Actor3d>(true, 4, Actor3d.class);
 	public int visibleCount;
+	/** Child groups with at least this many children are validated in their own task when the stage3d updates in parallel. */
+	public static int parallelThreshold = 32;
+	private boolean childrenDirty = true;
 	
 	public Group3d(){
 		super();
@@ -42,68 +53,187 @@ public class Group3d extends Actor3d{
 
 	
 	public void drawChildren(ModelBatch modelBatch, Environment environment){
+		validate();
+		drawChildren(modelBatch, environment, getStage3d().getDrawCamera().frustum, false, getInheritedMinScreenSize());
+	}
+	
+	/** Draws the visible children. A child group whose bounds are outside of the frustum is skipped with all its descendants, and
+	 * when they are fully inside no further frustum tests are done below it. Children that pass the frustum test but cover less
+	 * of the screen than their {@link Actor3d#setMinScreenSize(float) minimum screen size}, or are hidden behind the occluders of
+	 * the {@link Stage3d#enableOcclusionCulling() occlusion culling}, are skipped as well.
+	 * @param inside True if the bounds of this group are known to be fully inside of the frustum.
+	 * @param minScreenSize The minimum screen size of children that don't set their own, 0 to draw them whatever their size. */
+	void drawChildren(ModelBatch modelBatch, Environment environment, Frustum frustum, boolean inside, float minScreenSize){
 	     //modelBatch.render(children, environment); maybe faster 
 	     SnapshotArray<Actor3d> children = this.children;
 		 Actor3d[] actors = children.begin();
 		 visibleCount = 0;
-		 for (int i = 0, n = children.size; i < n; i++){
-			 if(actors[i] instanceof Group3d){
-	    		 ((Group3d) actors[i]).drawChildren(modelBatch, environment);
-	    	 }
-			 else{
-					float offsetX = x, offsetY = y, offsetZ = z;
-					float offsetScaleX = scaleX, offsetScaleY = scaleY, offsetScaleZ = scaleZ;
-					float offsetYaw = yaw, offsetPitch = pitch, offsetRoll = roll;
-					x = 0;
-					y = 0;
-					z = 0;
-					scaleX = 0;
-					scaleY = 0;
-					scaleZ = 0;
-					yaw = 0;
-					pitch = 0;
-					roll = 0;
-					Actor3d child = actors[i];
-					if (!child.isVisible()) continue;
-					/*Matrix4 diff = sub(child.getTransform(), getTransform());
-					Matrix4 childMatrix = child.getTransform().cpy();
-					child.getTransform().set(add(diff, childMatrix));
-					child.draw(modelBatch, environment);*/
-					float cx = child.x, cy = child.y, cz = child.z;
-					float sx = child.scaleX, sy = child.scaleY, sz = child.scaleZ;
-					float ry = child.yaw, rp = child.pitch, rr = child.roll;
-					//child.x = cx + offsetX;
-					//child.y = cy + offsetY;
-					//child.z = cz + offsetZ;
-					child.setPosition(cx + offsetX, cy + offsetY, cz + offsetZ);
-					child.setScale(sx + offsetScaleX, sy + offsetScaleY, sz + offsetScaleZ);
-					child.setRotation(ry + offsetYaw, rp + offsetPitch, rr +offsetRoll);
-			        if (child.isCullable(getStage3d().getCamera())) {
-			        	child.draw(modelBatch, environment);
-			            visibleCount++;
-			        }
-					child.x = cx;
-					child.y = cy;
-					child.z = cz;
-					x = offsetX;
-					y = offsetY;
-					z = offsetZ;
-					child.scaleX = sx;
-					child.scaleY = sy;
-					child.scaleZ = sz;
-					scaleX = offsetScaleX;
-					scaleY = offsetScaleY;
-					scaleZ = offsetScaleZ;
-					child.yaw = ry;
-					child.pitch = rp;
-					child.roll = rr;
-					yaw = offsetYaw;
-					pitch = offsetPitch;
-					roll = offsetRoll;
+		 for (int i = 0, n = children.size; i < n; i++)
+			 drawChild(modelBatch, environment, frustum, inside, minScreenSize, actors[i]);
+		 children.end();
+	}
+	
+	/** Draws the child if it is visible, or the visible children of a child group, as {@link #drawChildren(ModelBatch,
+	 * Environment, Frustum, boolean, float)} does for each child. */
+	void drawChild(ModelBatch modelBatch, Environment environment, Frustum frustum, boolean inside, float minScreenSize,
+		Actor3d child){
+		 if (!child.isVisible() || child.staticBatch != null) return;
+		 final float childMinScreenSize = child.minScreenSize < 0 ? minScreenSize : child.minScreenSize;
+		 if(child instanceof Group3d){
+			 Group3d group3d = (Group3d) child;
+			 if (inside) {
+				 if (!getStage3d().isOccluded(group3d))
+					 group3d.drawChildren(modelBatch, environment, frustum, true, childMinScreenSize);
+			 } else {
+				 int result = group3d.cull(frustum);
+				 if (result != FrustumUtils.OUTSIDE && !getStage3d().isOccluded(group3d))
+					 group3d.drawChildren(modelBatch, environment, frustum, result == FrustumUtils.INSIDE, childMinScreenSize);
+			 }
+    	 }
+		 else if ((inside || getStage3d().isCullable(child, frustum))
+			 && (childMinScreenSize <= 0 || !getStage3d().isTooSmall(child, childMinScreenSize))
+			 && !getStage3d().isOccluded(child)) {
+			 child.draw(modelBatch, environment);
+			 visibleCount++;
+		 }
+	}
+	
+	/** Adds the visible descendants to the lists of the views, testing each child once for all views that may see it. A view
+	 * drops out below a child group outside of its frustum, and stops testing below one fully inside of it. The hierarchy must be
+	 * validated.
+	 * @param mask Bit i is set if view i may see children of this group.
+	 * @param inside Bit i is set if the bounds of this group are fully inside of the frustum of view i. */
+	void cullChildren(View3d[] views, int mask, int inside){
+		 Actor3d[] actors = children.begin();
+		 for (int i = 0, n = children.size; i < n; i++) {
+			 final Actor3d child = actors[i];
+			 if (!child.isVisible() || child.staticBatch != null) continue;
+			 if (child instanceof Group3d) {
+				 final Group3d group3d = (Group3d) child;
+				 int childMask = mask, childInside = inside;
+				 for (int tested = mask & ~inside; tested != 0; tested &= tested - 1) {
+					 final int view = Integer.numberOfTrailingZeros(tested);
+					 final int result = isEmpty(group3d.worldBounds) ? FrustumUtils.OUTSIDE
+						 : FrustumUtils.classify(views[view].getFrustum(), group3d.worldBounds);
+					 if (result == FrustumUtils.OUTSIDE)
+						 childMask &= ~(1 << view);
+					 else if (result == FrustumUtils.INSIDE)
+						 childInside |= 1 << view;
+				 }
+				 if (childMask != 0) group3d.cullChildren(views, childMask, childInside & childMask);
+			 }
+			 else {
+				 for (int tested = mask; tested != 0; tested &= tested - 1) {
+					 final int view = Integer.numberOfTrailingZeros(tested);
+					 if ((inside & 1 << view) != 0 || child.isCullable(views[view].getFrustum())) views[view].visible.add(child);
+				 }
 			 }
 		 }
 		 children.end();
 	}
+	
+	/** Classifies the bounds of this group and all its descendants against the frustum of the camera.
+	 * @return {@link FrustumUtils#OUTSIDE}, {@link FrustumUtils#INTERSECTING} or {@link FrustumUtils#INSIDE} */
+	public int cull(Camera camera){
+		return cull(camera.frustum);
+	}
+	
+	/** Classifies the bounds of this group and all its descendants against the frustum.
+	 * @return {@link FrustumUtils#OUTSIDE}, {@link FrustumUtils#INTERSECTING} or {@link FrustumUtils#INSIDE} */
+	public int cull(Frustum frustum){
+		validate();
+		if (isEmpty(worldBounds)) return FrustumUtils.OUTSIDE;
+		return FrustumUtils.classify(frustum, worldBounds);
+	}
+	
+	/** Sets the world bounds of this group to the union of its own model's bounds and the bounds of all children. */
+	void updateChildrenBounds () {
+		super.updateWorldBounds();
+		final BoundingBox worldBounds = this.worldBounds;
+		Actor3d[] actors = children.items;
+		for (int i = 0, n = children.size; i < n; i++) {
+			BoundingBox childBounds = actors[i].worldBounds;
+			if (!isEmpty(childBounds)) worldBounds.ext(childBounds);
+		}
+		if (isEmpty(worldBounds))
+			worldRadius = 0;
+		else {
+			worldCenter.set(worldBounds.getCenter());
+			worldRadius = worldBounds.getDimensions().len() / 2f;
+		}
+	}
+
+	/** Invalidates the world transform of this group and, recursively, of all its children. */
+	@Override
+	void invalidateWorldTransform () {
+		if (worldDirty) return;
+		super.invalidateWorldTransform();
+		Actor3d[] actors = children.items;
+		for (int i = 0, n = children.size; i < n; i++)
+			actors[i].invalidateWorldTransform();
+	}
+	
+	/** Marks this group and its ascendants as having a descendant that needs to be validated. */
+	void invalidateChildren () {
+		if (childrenDirty) return;
+		childrenDirty = true;
+		Group3d parent = getParent();
+		if (parent != null) parent.invalidateChildren();
+	}
+	
+	/** Validates this group and its descendants. Subtrees in which nothing changed are skipped, so a static hierarchy costs
+	 * nothing. */
+	@Override
+	public void validate () {
+		super.validate();
+		if (!childrenDirty) return;
+		childrenDirty = false;
+		Actor3d[] actors = children.items;
+		for (int i = 0, n = children.size; i < n; i++)
+			actors[i].validate();
+		updateChildrenBounds();
+	}
+	
+	/** Like {@link #validate()}, but child groups with at least {@link #parallelThreshold} children are validated as separate
+	 * fork-join tasks. Must be called from within a {@link ForkJoinPool}. */
+	void validateParallel () {
+		super.validate();
+		if (!childrenDirty) return;
+		childrenDirty = false;
+		Array<ValidateTask> tasks = null;
+		Actor3d[] actors = children.items;
+		for (int i = 0, n = children.size; i < n; i++) {
+			Actor3d child = actors[i];
+			if (child instanceof Group3d && ((Group3d)child).children.size >= parallelThreshold) {
+				if (tasks == null) tasks = new Array<ValidateTask>(false, 4, ValidateTask.class);
+				tasks.add(new ValidateTask((Group3d)child));
+			}
+			else
+				child.validate();
+		}
+		if (tasks != null) {
+			for (int i = 0, n = tasks.size; i < n; i++)
+				tasks.get(i).fork();
+			for (int i = tasks.size - 1; i >= 0; i--)
+				tasks.get(i).join();
+		}
+		updateChildrenBounds();
+	}
+	
+	/** Validates a subtree on a worker thread. */
+	@SuppressWarnings("serial")
+	static class ValidateTask extends RecursiveAction {
+		final Group3d group3d;
+		
+		ValidateTask (Group3d group3d) {
+			this.group3d = group3d;
+		}
+		
+		@Override
+		protected void compute () {
+			group3d.validateParallel();
+		}
+	}
 
     /** Adds an actor as a child of this group. The actor is first removed from its parent group, if any.
      * @see #remove() */
@@ -124,6 +254,7 @@ public class Group3d extends Actor3d{
             if (stage != null) stage.unfocus(actor3d);
             actor3d.setParent(null);
             actor3d.setStage3d(null);
+            invalidateChildren();
             childrenChanged();
             return true;
     }
@@ -142,6 +273,7 @@ public class Group3d extends Actor3d{
             }
             children.end();
             children.clear();
+            invalidateChildren();
             childrenChanged();
     }
 
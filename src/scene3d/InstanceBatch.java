@@ -0,0 +1,60 @@
+package scene3d;
+
+import java.nio.FloatBuffer;
+
+import com.badlogic.gdx.graphics.g3d.Renderable;
+import com.badlogic.gdx.utils.BufferUtils;
+
+/** The instances of one mesh part with one material, as collected by an {@link InstanceBatcher}. The world transforms of the
+ * instances are packed one after the other, 16 floats in the column major order of {@link com.badlogic.gdx.math.Matrix4#val},
+ * into a direct buffer that an instancing shader can upload in one call. */
+public class InstanceBatch {
+	/** The mesh part, material, environment and shader shared by the instances. Its world transform is that of the first
+	 * instance. */
+	public final Renderable renderable;
+	final int materialId;
+	private float[] transforms = new float[16 * 16];
+	private FloatBuffer buffer = BufferUtils.newFloatBuffer(16 * 16);
+	private int count;
+
+	InstanceBatch (Renderable renderable, int materialId) {
+		this.renderable = renderable;
+		this.materialId = materialId;
+	}
+
+	void add (float[] transform) {
+		if ((count + 1) * 16 > transforms.length) {
+			final float[] newTransforms = new float[transforms.length * 2];
+			System.arraycopy(transforms, 0, newTransforms, 0, count * 16);
+			transforms = newTransforms;
+		}
+		System.arraycopy(transform, 0, transforms, count * 16, 16);
+		count++;
+	}
+
+	void clear () {
+		count = 0;
+	}
+
+	/** Copies the transforms to the direct buffer in one native copy. */
+	void pack () {
+		if (buffer.capacity() < transforms.length) buffer = BufferUtils.newFloatBuffer(transforms.length);
+		BufferUtils.copy(transforms, buffer, count * 16, 0);
+	}
+
+	/** Returns the number of instances. */
+	public int getCount () {
+		return count;
+	}
+
+	/** Returns the transforms of the instances, 16 floats each, from position 0 to the limit. Valid after
+	 * {@link InstanceBatcher#end()} until the next {@link InstanceBatcher#begin()}. */
+	public FloatBuffer getTransforms () {
+		return buffer;
+	}
+
+	/** Returns the array the transforms are collected in, 16 floats per instance up to {@link #getCount()}. */
+	public float[] getTransformArray () {
+		return transforms;
+	}
+}
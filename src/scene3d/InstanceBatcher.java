@@ -0,0 +1,189 @@
+package scene3d;
+
+import scene3d.utils.MaterialIds;
+
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.g3d.Environment;
+import com.badlogic.gdx.graphics.g3d.Material;
+import com.badlogic.gdx.graphics.g3d.ModelBatch;
+import com.badlogic.gdx.graphics.g3d.Renderable;
+import com.badlogic.gdx.graphics.g3d.RenderableProvider;
+import com.badlogic.gdx.graphics.g3d.Shader;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IdentityMap;
+import com.badlogic.gdx.utils.IdentityMap.Values;
+import com.badlogic.gdx.utils.Pool;
+
+/** Groups the renderables of actor3ds that share a mesh part and an equal material, eg many actor3ds of the same model, into
+ * {@link InstanceBatch}es with the world transforms of all instances packed in one buffer. Skinned renderables can't share a
+ * transform layout and are kept apart.
+ * <p>
+ * Drawing a batch in one call needs an instancing shader, given with {@link #setInstancedShader(Shader)}, which gets the batch as
+ * the {@link Renderable#userData} of the renderable it is asked to render. Without one, every instance is handed to the model
+ * batch on its own, one after the other so that the mesh and material stay bound.
+ * <p>
+ * Use {@link Stage3d#enableInstancing()} to have the stage3d draw its actor3ds through it. The batches are reused from frame to
+ * frame, and a batch that got no instances for a whole frame is dropped. */
+public class InstanceBatcher {
+	private final IdentityMap<Mesh, Array<InstanceBatch>> batches = new IdentityMap<Mesh, Array<InstanceBatch>>();
+	/** The batches with instances this frame, in the order they were first added to. */
+	private final Array<InstanceBatch> activeBatches = new Array<InstanceBatch>(false, 16, InstanceBatch.class);
+	private final MaterialIds materialIds = new MaterialIds();
+	private Shader instancedShader;
+
+	private final Array<Renderable> renderables = new Array<Renderable>(false, 16, Renderable.class);
+	/** The skinned renderables, drawn one by one. */
+	private final Array<Renderable> singles = new Array<Renderable>(false, 16, Renderable.class);
+	/** The renderables given to the model batch, which must live until it is flushed. */
+	private final Array<Renderable> submitted = new Array<Renderable>(false, 16, Renderable.class);
+	private final Pool<Renderable> pool = new Pool<Renderable>() {
+		protected Renderable newObject () {
+			return new Renderable();
+		}
+	};
+
+	/** Starts collecting the instances of a frame and drops the batches that got none during the last one. */
+	public void begin () {
+		pool.freeAll(singles);
+		singles.clear();
+		pool.freeAll(submitted);
+		submitted.clear();
+		// Start the ids over once in a while, so that the copies of materials no longer drawn don't pile up, with the batches that
+		// were found by them.
+		final boolean clearAll = materialIds.getIdCount() > 4096;
+		if (clearAll) materialIds.clear();
+		final Values<Array<InstanceBatch>> values = batches.values();
+		while (values.hasNext()) {
+			final Array<InstanceBatch> meshBatches = values.next();
+			for (int i = meshBatches.size - 1; i >= 0; i--) {
+				final InstanceBatch batch = meshBatches.get(i);
+				if (clearAll || batch.getCount() == 0) {
+					meshBatches.removeIndex(i);
+					pool.free(batch.renderable);
+				}
+				batch.clear();
+			}
+			if (meshBatches.size == 0) values.remove();
+		}
+		activeBatches.clear();
+	}
+
+	/** Adds the renderables of the provider, eg an {@link Actor3d}, to the batches. */
+	public void add (RenderableProvider provider, Environment environment) {
+		final Array<Renderable> renderables = this.renderables;
+		provider.getRenderables(renderables, pool);
+		for (int i = 0, n = renderables.size; i < n; i++) {
+			final Renderable renderable = renderables.get(i);
+			renderable.environment = environment;
+			if (renderable.bones != null) {
+				singles.add(renderable);
+				continue;
+			}
+			final InstanceBatch batch = findBatch(renderable);
+			if (batch.renderable != renderable) pool.free(renderable);
+		}
+		renderables.clear();
+	}
+
+	/** Returns the batch for the renderable and adds its transform to it, creating the batch with the renderable if there is
+	 * none. The material ids only narrow the search: a material changed in place, eg by
+	 * {@link Actor3d#setColor(com.badlogic.gdx.graphics.Color)}, keeps its old id, so the material of a batch is compared before
+	 * an instance joins it. A batch with no instances yet this frame takes the material of its first one. */
+	private InstanceBatch findBatch (Renderable renderable) {
+		final int materialId = materialIds.get(renderable.material);
+		Array<InstanceBatch> meshBatches = batches.get(renderable.mesh);
+		if (meshBatches == null) {
+			meshBatches = new Array<InstanceBatch>(false, 4, InstanceBatch.class);
+			batches.put(renderable.mesh, meshBatches);
+		}
+		InstanceBatch batch = null;
+		final InstanceBatch[] items = meshBatches.items;
+		for (int i = 0, n = meshBatches.size; i < n; i++) {
+			final Renderable other = items[i].renderable;
+			if (items[i].materialId == materialId && other.meshPartOffset == renderable.meshPartOffset
+				&& other.meshPartSize == renderable.meshPartSize && other.primitiveType == renderable.primitiveType
+				&& other.environment == renderable.environment && other.shader == renderable.shader
+				&& (items[i].getCount() == 0 || equal(other.material, renderable.material))) {
+				batch = items[i];
+				break;
+			}
+		}
+		if (batch == null) {
+			batch = new InstanceBatch(renderable, materialId);
+			meshBatches.add(batch);
+		}
+		if (batch.getCount() == 0) {
+			activeBatches.add(batch);
+			batch.renderable.worldTransform.set(renderable.worldTransform);
+			batch.renderable.material = renderable.material;
+		}
+		batch.add(renderable.worldTransform.val);
+		return batch;
+	}
+
+	static private boolean equal (Material a, Material b) {
+		return a == b || (a != null && a.equals(b));
+	}
+
+	/** Packs the transforms of every batch into its buffer. */
+	public void end () {
+		final InstanceBatch[] items = activeBatches.items;
+		for (int i = 0, n = activeBatches.size; i < n; i++)
+			items[i].pack();
+	}
+
+	/** Hands the batches to the model batch, as one renderable per batch for the {@link #setInstancedShader(Shader) instanced
+	 * shader} or else as one renderable per instance. Call {@link #end()} first. */
+	public void render (ModelBatch modelBatch) {
+		final InstanceBatch[] items = activeBatches.items;
+		for (int i = 0, n = activeBatches.size; i < n; i++) {
+			final InstanceBatch batch = items[i];
+			final Renderable template = batch.renderable;
+			if (instancedShader != null) {
+				final Renderable renderable = obtain(template);
+				renderable.shader = instancedShader;
+				renderable.userData = batch;
+				modelBatch.render(renderable);
+				continue;
+			}
+			final float[] transforms = batch.getTransformArray();
+			for (int j = 0, count = batch.getCount(); j < count; j++) {
+				final Renderable renderable = obtain(template);
+				System.arraycopy(transforms, j * 16, renderable.worldTransform.val, 0, 16);
+				modelBatch.render(renderable);
+			}
+		}
+		for (int i = 0, n = singles.size; i < n; i++)
+			modelBatch.render(singles.get(i));
+	}
+
+	private Renderable obtain (Renderable template) {
+		final Renderable renderable = pool.obtain();
+		renderable.worldTransform.set(template.worldTransform);
+		renderable.mesh = template.mesh;
+		renderable.meshPartOffset = template.meshPartOffset;
+		renderable.meshPartSize = template.meshPartSize;
+		renderable.primitiveType = template.primitiveType;
+		renderable.material = template.material;
+		renderable.bones = null;
+		renderable.environment = template.environment;
+		renderable.shader = template.shader;
+		renderable.userData = template.userData;
+		submitted.add(renderable);
+		return renderable;
+	}
+
+	/** Returns the batches that got instances since the last {@link #begin()}. */
+	public Array<InstanceBatch> getBatches () {
+		return activeBatches;
+	}
+
+	public Shader getInstancedShader () {
+		return instancedShader;
+	}
+
+	/** @param instancedShader Draws all instances of a batch at once, may be null to draw them one by one. */
+	public void setInstancedShader (Shader instancedShader) {
+		this.instancedShader = instancedShader;
+	}
+}
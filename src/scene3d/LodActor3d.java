@@ -0,0 +1,199 @@
+package scene3d;
+
+import scene3d.utils.ModelBounds;
+import scene3d.utils.TriangleTree;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.g3d.Environment;
+import com.badlogic.gdx.graphics.g3d.Model;
+import com.badlogic.gdx.graphics.g3d.ModelBatch;
+import com.badlogic.gdx.graphics.g3d.ModelInstance;
+import com.badlogic.gdx.graphics.g3d.Renderable;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IdentityMap;
+import com.badlogic.gdx.utils.Pool;
+
+/** An actor3d with coarser models for when it is far from the camera. Level 0 is the model of the actor3d itself, each added
+ * level is drawn once the distance from the camera to the center of the actor3d is beyond the level's distance. The level is
+ * picked when the actor3d passes culling, so actor3ds that are not drawn cost nothing.
+ * <p>
+ * A level only changes once the distance is past its threshold by the {@link #setHysteresis(float) hysteresis}, so an actor3d
+ * near a threshold doesn't flicker between two levels. Each level has the shared {@link ModelBounds} of its model, which become
+ * the bounds of the actor3d while the level is drawn.
+ * <p>
+ * The coarser levels are drawn through model instances that are taken from a pool per model when the level is entered and given
+ * back when it is left, so switching doesn't allocate and only the actor3ds currently at a level hold an instance of it. Pooled
+ * instances are shared, don't change their materials. Only level 0 is animated. Dispose of the level models with
+ * {@link #disposeLevelModel(Model)}. */
+public class LodActor3d extends Actor3d {
+	/** The unused instances of the level models, shared by all lod actor3ds. */
+	static private final IdentityMap<Model, Array<ModelInstance>> instancePool = new IdentityMap<Model, Array<ModelInstance>>();
+
+	private final Array<Level> levels = new Array<Level>(false, 4, Level.class);
+	private int level;
+	/** The instance drawn for the current level, null at level 0. */
+	private ModelInstance instance;
+	private float hysteresis = 0.1f;
+
+	public LodActor3d (Model model) {
+		super(model);
+		levels.add(new Level(model, 0, getBounds()));
+	}
+
+	public LodActor3d (Model model, float x, float y, float z) {
+		super(model, x, y, z);
+		levels.add(new Level(model, 0, getBounds()));
+	}
+
+	/** Adds a level drawn from the distance on. Levels must be added from the nearest to the farthest.
+	 * @param distance The distance from the camera, in world units, at which the model replaces the previous level. */
+	public void addLevel (Model model, float distance) {
+		if (distance <= levels.peek().distance)
+			throw new IllegalArgumentException("Levels must be added by increasing distance: " + distance);
+		levels.add(new Level(model, distance, ModelBounds.get(model)));
+	}
+
+	/** Picks the level for the distance of the camera of the stage3d, then draws it. Drawn for a {@link View3d}, the level of the
+	 * view is picked by {@link #getRenderables(Array, Pool)} instead, so that the views don't switch the level back and forth. */
+	@Override
+	public void draw (ModelBatch modelBatch, Environment environment) {
+		final Stage3d stage3d = getStage3d();
+		if (stage3d.getDrawCamera() == stage3d.getCamera()) selectLevel(stage3d.getCamera());
+		super.draw(modelBatch, environment);
+	}
+
+	/** Moves to the level for the distance from the camera to the world center. A coarser level is only taken once the distance
+	 * is beyond its threshold plus the hysteresis, and a finer one once it is before the threshold minus the hysteresis.
+	 * @return The current level. */
+	public int selectLevel (Camera camera) {
+		setLevel(levelFor(camera, level, hysteresis));
+		return level;
+	}
+
+	/** Returns the level for the distance from the camera to the world center, moving from the level with the hysteresis. */
+	private int levelFor (Camera camera, int level, float hysteresis) {
+		validateTransform();
+		final float distance = camera.position.dst(worldCenter);
+		final Level[] items = levels.items;
+		while (level < levels.size - 1 && distance > items[level + 1].distance * (1 + hysteresis))
+			level++;
+		while (level > 0 && distance < items[level].distance * (1 - hysteresis))
+			level--;
+		return level;
+	}
+
+	/** Draws the level until the next {@link #selectLevel(Camera)}. */
+	public void setLevel (int level) {
+		if (level == this.level) return;
+		if (level < 0 || level >= levels.size) throw new IndexOutOfBoundsException("level can't be >= " + levels.size + ": " + level);
+		freeInstance();
+		this.level = level;
+		final Level current = levels.get(level);
+		if (level > 0) instance = obtainInstance(current.model);
+		setBounds(current.bounds);
+	}
+
+	public int getLevel () {
+		return level;
+	}
+
+	public int getLevelCount () {
+		return levels.size;
+	}
+
+	/** Returns the model of the level, level 0 is the model of this actor3d. */
+	public Model getLevelModel (int level) {
+		return levels.get(level).model;
+	}
+
+	/** Returns the distance from which the level is drawn. */
+	public float getLevelDistance (int level) {
+		return levels.get(level).distance;
+	}
+
+	public float getHysteresis () {
+		return hysteresis;
+	}
+
+	/** @param hysteresis How far past a threshold the distance must be before the level changes, as a fraction of the threshold.
+	 *           Default is 0.1. */
+	public void setHysteresis (float hysteresis) {
+		this.hysteresis = hysteresis;
+	}
+
+	/** Gets the renderables of the current level, in the world transform of this actor3d. While the stage3d draws a
+	 * {@link View3d}, they are the ones of the level for the distance from the camera of the view, without hysteresis. That level
+	 * is drawn through an instance borrowed from the pool for this call, the current level and bounds are kept. */
+	@Override
+	public void getRenderables (Array<Renderable> renderables, Pool<Renderable> pool) {
+		final Stage3d stage3d = getStage3d();
+		int level = this.level;
+		if (stage3d != null && stage3d.getDrawCamera() != stage3d.getCamera()) level = levelFor(stage3d.getDrawCamera(), 0, 0);
+		if (level == 0) {
+			super.getRenderables(renderables, pool);
+			return;
+		}
+		if (level == this.level) {
+			instance.transform.set(transform);
+			instance.getRenderables(renderables, pool);
+			return;
+		}
+		final ModelInstance borrowed = obtainInstance(levels.get(level).model);
+		borrowed.transform.set(transform);
+		borrowed.getRenderables(renderables, pool);
+		instancePool.get(borrowed.model).add(borrowed);
+	}
+
+	@Override
+	protected void setStage3d (Stage3d stage3d) {
+		super.setStage3d(stage3d);
+		// Off stage the instance would be held for nothing, the level is picked again when drawn.
+		if (stage3d == null) setLevel(0);
+	}
+
+	private void freeInstance () {
+		if (instance == null) return;
+		// The pool is gone if the level model was disposed while this actor3d was at the level.
+		final Array<ModelInstance> free = instancePool.get(instance.model);
+		if (free != null) free.add(instance);
+		instance = null;
+	}
+
+	static private ModelInstance obtainInstance (Model model) {
+		Array<ModelInstance> free = instancePool.get(model);
+		if (free == null) {
+			free = new Array<ModelInstance>(false, 16, ModelInstance.class);
+			instancePool.put(model, free);
+		}
+		return free.size > 0 ? free.pop() : new ModelInstance(model);
+	}
+
+	/** Disposes of the model of level 0, like {@link Actor3d#dispose()}. The models of the coarser levels are usually shared by
+	 * many lod actor3ds, like their pooled instances, and are left to {@link #disposeLevelModel(Model)}. */
+	@Override
+	public void dispose () {
+		setLevel(0);
+		super.dispose();
+	}
+
+	/** Disposes of a model given to {@link #addLevel(Model, float)}, with its pooled instances, once no lod actor3d draws it
+	 * anymore. */
+	static public void disposeLevelModel (Model model) {
+		instancePool.remove(model);
+		ModelBounds.remove(model);
+		TriangleTree.remove(model);
+		model.dispose();
+	}
+
+	static private class Level {
+		final Model model;
+		final float distance;
+		final ModelBounds bounds;
+
+		Level (Model model, float distance, ModelBounds bounds) {
+			this.model = model;
+			this.distance = distance;
+			this.bounds = bounds;
+		}
+	}
+}
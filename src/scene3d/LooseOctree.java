@@ -0,0 +1,212 @@
+package scene3d;
+
+import scene3d.utils.FrustumUtils;
+
+import com.badlogic.gdx.math.Frustum;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+
+/** A loose octree over the world bounds of actor3ds, for asking which actor3ds are near a box, a sphere or inside of a frustum.
+ * Every node reaches out half its size past its cell on each side, so an actor3d is stored in the single node at the depth that
+ * matches its size whose cell contains its center, and moving it only needs a new node when its center changes cell. Nodes are
+ * created as they are needed. Actor3ds outside of the octree bounds are kept in the root and tested by every query.
+ * <p>
+ * Add it to a stage3d with {@link Stage3d#addSpatialIndex(SpatialIndex3d)} to keep it up to date. The queries see the world
+ * bounds as of the last {@link Stage3d#validate()}. */
+public class LooseOctree implements SpatialIndex3d {
+	private final Node root;
+	private final int maxDepth;
+	private final ObjectMap<Actor3d, Node> nodes = new ObjectMap<Actor3d, Node>();
+
+	/** @param center The center of the region covered by the octree.
+	 * @param halfSize Half the size of the region along each axis.
+	 * @param maxDepth The depth of the smallest nodes, the root being at depth 0. */
+	public LooseOctree (Vector3 center, float halfSize, int maxDepth) {
+		root = new Node(null, center.x, center.y, center.z, halfSize);
+		this.maxDepth = maxDepth;
+	}
+
+	public void update (Actor3d actor3d) {
+		final BoundingBox bounds = actor3d.worldBounds;
+		if (Actor3d.isEmpty(bounds)) {
+			remove(actor3d);
+			return;
+		}
+		final Node node = findNode(bounds);
+		final Node current = nodes.get(actor3d);
+		if (current == node) return;
+		if (current != null) current.remove(actor3d);
+		node.add(actor3d);
+		nodes.put(actor3d, node);
+	}
+
+	public void remove (Actor3d actor3d) {
+		final Node node = nodes.remove(actor3d);
+		if (node != null) node.remove(actor3d);
+	}
+
+	public void clear () {
+		nodes.clear();
+		root.clear();
+	}
+
+	/** Returns the number of actor3ds in the octree. */
+	public int size () {
+		return root.count;
+	}
+
+	/** Returns the node for the bounds, creating the nodes on the way to it. */
+	private Node findNode (BoundingBox bounds) {
+		final Node root = this.root;
+		final float x = (bounds.min.x + bounds.max.x) / 2f, y = (bounds.min.y + bounds.max.y) / 2f;
+		final float z = (bounds.min.z + bounds.max.z) / 2f;
+		final float extent = Math.max(bounds.max.x - bounds.min.x, Math.max(bounds.max.y - bounds.min.y, bounds.max.z
+			- bounds.min.z)) / 2f;
+		final float half = root.half;
+		if (extent > half || Math.abs(x - root.x) > half || Math.abs(y - root.y) > half || Math.abs(z - root.z) > half)
+			return root;
+		// The deepest depth whose cells are at least as large as the extent, so that the loose node contains the bounds.
+		int depth = extent > 0 ? (int)(Math.log(half / extent) / Math.log(2)) : maxDepth;
+		if (depth > maxDepth) depth = maxDepth;
+		Node node = root;
+		for (int i = 0; i < depth; i++)
+			node = node.child(x >= node.x, y >= node.y, z >= node.z);
+		return node;
+	}
+
+	/** Adds the actor3ds whose world bounds overlap the box to the array. */
+	public Array<Actor3d> query (BoundingBox box, Array<Actor3d> out) {
+		root.query(box.min.x, box.min.y, box.min.z, box.max.x, box.max.y, box.max.z, out, true);
+		return out;
+	}
+
+	/** Adds the actor3ds whose world bounds overlap the sphere to the array. */
+	public Array<Actor3d> query (Vector3 center, float radius, Array<Actor3d> out) {
+		root.query(center.x, center.y, center.z, radius, out, true);
+		return out;
+	}
+
+	/** Adds the actor3ds whose world bounds are at least partially inside of the frustum to the array. Subtrees that are
+	 * completely inside are added without further tests. */
+	public Array<Actor3d> query (Frustum frustum, Array<Actor3d> out) {
+		root.query(frustum, out, true);
+		return out;
+	}
+
+	static private boolean overlaps (BoundingBox bounds, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		return bounds.min.x <= maxX && bounds.max.x >= minX && bounds.min.y <= maxY && bounds.max.y >= minY
+			&& bounds.min.z <= maxZ && bounds.max.z >= minZ;
+	}
+
+	/** Returns the squared distance from the point to the box, 0 if it is inside. */
+	static private float distance2 (float x, float y, float z, float minX, float minY, float minZ, float maxX, float maxY,
+		float maxZ) {
+		final float dx = x < minX ? minX - x : (x > maxX ? x - maxX : 0);
+		final float dy = y < minY ? minY - y : (y > maxY ? y - maxY : 0);
+		final float dz = z < minZ ? minZ - z : (z > maxZ ? z - maxZ : 0);
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	static private class Node {
+		final Node parent;
+		/** The center and half size of the cell. The node holds actor3ds up to twice as far from the center. */
+		final float x, y, z, half;
+		final Array<Actor3d> actors = new Array<Actor3d>(false, 4, Actor3d.class);
+		/** The children by octant, created when first needed. */
+		Node[] children;
+		/** The number of actor3ds in this node and its descendants, so that empty subtrees are skipped. */
+		int count;
+
+		Node (Node parent, float x, float y, float z, float half) {
+			this.parent = parent;
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			this.half = half;
+		}
+
+		Node child (boolean positiveX, boolean positiveY, boolean positiveZ) {
+			if (children == null) children = new Node[8];
+			final int index = (positiveX ? 1 : 0) | (positiveY ? 2 : 0) | (positiveZ ? 4 : 0);
+			Node child = children[index];
+			if (child == null) {
+				final float h = half / 2f;
+				child = new Node(this, positiveX ? x + h : x - h, positiveY ? y + h : y - h, positiveZ ? z + h : z - h, h);
+				children[index] = child;
+			}
+			return child;
+		}
+
+		void add (Actor3d actor3d) {
+			actors.add(actor3d);
+			for (Node node = this; node != null; node = node.parent)
+				node.count++;
+		}
+
+		void remove (Actor3d actor3d) {
+			actors.removeValue(actor3d, true);
+			for (Node node = this; node != null; node = node.parent)
+				node.count--;
+		}
+
+		void clear () {
+			actors.clear();
+			children = null;
+			count = 0;
+		}
+
+		void query (float minX, float minY, float minZ, float maxX, float maxY, float maxZ, Array<Actor3d> out, boolean isRoot) {
+			if (count == 0) return;
+			final float loose = half * 2f;
+			// The root also holds the actor3ds outside of its bounds, so it is never skipped.
+			if (!isRoot && (x - loose > maxX || x + loose < minX || y - loose > maxY || y + loose < minY || z - loose > maxZ
+				|| z + loose < minZ)) return;
+			final Actor3d[] items = actors.items;
+			for (int i = 0, n = actors.size; i < n; i++)
+				if (overlaps(items[i].worldBounds, minX, minY, minZ, maxX, maxY, maxZ)) out.add(items[i]);
+			if (children != null) for (int i = 0; i < 8; i++)
+				if (children[i] != null) children[i].query(minX, minY, minZ, maxX, maxY, maxZ, out, false);
+		}
+
+		void query (float cx, float cy, float cz, float radius, Array<Actor3d> out, boolean isRoot) {
+			if (count == 0) return;
+			final float loose = half * 2f, radius2 = radius * radius;
+			if (!isRoot && distance2(cx, cy, cz, x - loose, y - loose, z - loose, x + loose, y + loose, z + loose) > radius2)
+				return;
+			final Actor3d[] items = actors.items;
+			for (int i = 0, n = actors.size; i < n; i++) {
+				final BoundingBox b = items[i].worldBounds;
+				if (distance2(cx, cy, cz, b.min.x, b.min.y, b.min.z, b.max.x, b.max.y, b.max.z) <= radius2) out.add(items[i]);
+			}
+			if (children != null) for (int i = 0; i < 8; i++)
+				if (children[i] != null) children[i].query(cx, cy, cz, radius, out, false);
+		}
+
+		void query (Frustum frustum, Array<Actor3d> out, boolean isRoot) {
+			if (count == 0) return;
+			if (!isRoot) {
+				final float loose = half * 2f;
+				final int result = FrustumUtils.classify(frustum, x - loose, y - loose, z - loose, x + loose, y + loose, z + loose);
+				if (result == FrustumUtils.OUTSIDE) return;
+				if (result == FrustumUtils.INSIDE) {
+					addAll(out);
+					return;
+				}
+			}
+			final Actor3d[] items = actors.items;
+			for (int i = 0, n = actors.size; i < n; i++)
+				if (FrustumUtils.classify(frustum, items[i].worldBounds) != FrustumUtils.OUTSIDE) out.add(items[i]);
+			if (children != null) for (int i = 0; i < 8; i++)
+				if (children[i] != null) children[i].query(frustum, out, false);
+		}
+
+		void addAll (Array<Actor3d> out) {
+			if (count == 0) return;
+			out.addAll(actors);
+			if (children != null) for (int i = 0; i < 8; i++)
+				if (children[i] != null) children[i].addAll(out);
+		}
+	}
+}
@@ -0,0 +1,308 @@
+package scene3d;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import scene3d.utils.TriangleTree;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.utils.Array;
+
+/** Skips actor3ds hidden behind large ones, such as walls and buildings, by drawing a few designated occluders into a small
+ * depth buffer on the CPU and testing the screen rectangle of each candidate against it before it is drawn. It needs no GL, so it
+ * works the same on a headless machine.
+ * <p>
+ * The depth buffer is reduced into a hierarchy in which each texel holds the farthest depth of the four below it. An actor3d is
+ * hidden if the nearest corner of its world bounds is behind the farthest occluder depth everywhere in its rectangle, which is
+ * read from the level where the rectangle covers only a few texels. Occluder triangles are sampled at texel centers, so the
+ * rectangle is grown by a texel, and those crossing the near plane are left out. Occluders should be large, and the resolution is
+ * best kept low.
+ * <p>
+ * Occluders use the triangles of their model, shared with picking, see {@link TriangleTree}. Use simple, closed models for them.
+ * Use {@link Stage3d#enableOcclusionCulling()} to have the stage3d draw the occluders before each frame and test actor3ds and groups
+ * against them. With {@link Stage3d#enableParallelUpdate() parallel updates} the rows of the depth buffer are split over the
+ * fork-join pool of the stage3d. */
+public class OcclusionCuller {
+	/** Triangles with a corner closer to the eye than this, in clip space w, are not drawn. */
+	static private final float NEAR_W = 1e-4f;
+	/** The most texels per axis tested for one rectangle. */
+	static private final int TEST_TEXELS = 4;
+	/** Below this many triangles the rows are not worth splitting over threads. */
+	static private final int PARALLEL_THRESHOLD = 512;
+
+	private final int width, height;
+	/** The depth buffer at full resolution, then each level at half the resolution of the one before, rows bottom up. */
+	private final float[][] levels;
+	private final int[] levelWidths, levelHeights;
+
+	private final Array<Actor3d> occluders = new Array<Actor3d>(false, 16, Actor3d.class);
+	/** Screen x, y and depth of the three corners of each triangle drawn this frame. */
+	private float[] triangles = new float[9 * 256];
+	private int triangleCount;
+	private final Matrix4 combined = new Matrix4(), transform = new Matrix4();
+	private int testedCount, occludedCount;
+
+	private RasterTask[] tasks = new RasterTask[0];
+	private final RecursiveAction rasterizeAll = new RecursiveAction() {
+		protected void compute () {
+			invokeAll(tasks);
+		}
+	};
+
+	/** @param width The width of the depth buffer in texels, eg 256.
+	 * @param height The height of the depth buffer in texels, eg 128. */
+	public OcclusionCuller (int width, int height) {
+		this.width = width;
+		this.height = height;
+		int levelCount = 1;
+		for (int w = width, h = height; w > 1 || h > 1; w = (w + 1) >> 1, h = (h + 1) >> 1)
+			levelCount++;
+		levels = new float[levelCount][];
+		levelWidths = new int[levelCount];
+		levelHeights = new int[levelCount];
+		for (int i = 0, w = width, h = height; i < levelCount; i++, w = (w + 1) >> 1, h = (h + 1) >> 1) {
+			levels[i] = new float[w * h];
+			levelWidths[i] = w;
+			levelHeights[i] = h;
+		}
+	}
+
+	/** Adds an actor3d whose model hides what is behind it. It is still drawn and tested like any other actor3d. */
+	public void addOccluder (Actor3d actor3d) {
+		if (!occluders.contains(actor3d, true)) occluders.add(actor3d);
+	}
+
+	public boolean removeOccluder (Actor3d actor3d) {
+		return occluders.removeValue(actor3d, true);
+	}
+
+	public void clearOccluders () {
+		occluders.clear();
+	}
+
+	public Array<Actor3d> getOccluders () {
+		return occluders;
+	}
+
+	/** Draws the visible occluders in the stage3d as seen by the camera, which must be updated, and builds the depth hierarchy.
+	 * @param pool May be null to draw all rows on the calling thread. */
+	public void render (Camera camera, ForkJoinPool pool) {
+		combined.set(camera.combined);
+		testedCount = 0;
+		occludedCount = 0;
+		triangleCount = 0;
+		final Actor3d[] items = occluders.items;
+		for (int i = 0, n = occluders.size; i < n; i++) {
+			final Actor3d occluder = items[i];
+			if (occluder.getStage3d() == null || !occluder.isVisibleInHierarchy()) continue;
+			addTriangles(TriangleTree.get(occluder.model), occluder.getTransform());
+		}
+
+		Arrays.fill(levels[0], 1);
+		if (pool == null || triangleCount < PARALLEL_THRESHOLD)
+			rasterize(0, height);
+		else {
+			final int parallelism = Math.min(pool.getParallelism(), height);
+			if (tasks.length != parallelism) {
+				tasks = new RasterTask[parallelism];
+				for (int i = 0; i < parallelism; i++)
+					tasks[i] = new RasterTask();
+			}
+			for (int i = 0; i < parallelism; i++) {
+				final RasterTask task = tasks[i];
+				task.reinitialize();
+				task.start = height * i / parallelism;
+				task.end = height * (i + 1) / parallelism;
+			}
+			rasterizeAll.reinitialize();
+			pool.invoke(rasterizeAll);
+		}
+		buildHierarchy();
+	}
+
+	/** Projects the triangles of the tree to the screen and keeps the ones that can cover any of it. */
+	private void addTriangles (TriangleTree tree, Matrix4 worldTransform) {
+		final int count = tree.getTriangleCount();
+		if (count == 0) return;
+		final float[] source = tree.getTriangles();
+		if (triangles.length < (triangleCount + count) * 9)
+			triangles = Arrays.copyOf(triangles, Math.max((triangleCount + count) * 9, triangles.length * 2));
+		final float[] triangles = this.triangles;
+		final float[] m = transform.set(combined).mul(worldTransform).val;
+		final float halfWidth = width / 2f, halfHeight = height / 2f;
+		int at = triangleCount * 9;
+		triangles:
+		for (int t = 0, n = count * 9; t < n; t += 9) {
+			float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+			for (int c = 0; c < 9; c += 3) {
+				final float x = source[t + c], y = source[t + c + 1], z = source[t + c + 2];
+				final float w = m[Matrix4.M30] * x + m[Matrix4.M31] * y + m[Matrix4.M32] * z + m[Matrix4.M33];
+				// Leaving out a triangle only makes the occluder smaller, which never hides a visible actor3d.
+				if (w < NEAR_W) continue triangles;
+				final float invW = 1 / w;
+				final float sx = ((m[Matrix4.M00] * x + m[Matrix4.M01] * y + m[Matrix4.M02] * z + m[Matrix4.M03]) * invW + 1) * halfWidth;
+				final float sy = ((m[Matrix4.M10] * x + m[Matrix4.M11] * y + m[Matrix4.M12] * z + m[Matrix4.M13]) * invW + 1) * halfHeight;
+				triangles[at + c] = sx;
+				triangles[at + c + 1] = sy;
+				triangles[at + c + 2] = (m[Matrix4.M20] * x + m[Matrix4.M21] * y + m[Matrix4.M22] * z + m[Matrix4.M23]) * invW;
+				minX = Math.min(minX, sx);
+				maxX = Math.max(maxX, sx);
+				minY = Math.min(minY, sy);
+				maxY = Math.max(maxY, sy);
+			}
+			if (maxX < 0 || maxY < 0 || minX > width || minY > height) continue;
+			at += 9;
+		}
+		triangleCount = at / 9;
+	}
+
+	/** Draws the depth of all triangles into the rows from start to end of the full resolution buffer, keeping the nearest. Rows
+	 * don't share texels, so ranges of rows can be drawn on several threads at once. */
+	void rasterize (int start, int end) {
+		final float[] triangles = this.triangles, depth = levels[0];
+		final int width = this.width;
+		for (int t = 0, n = triangleCount * 9; t < n; t += 9) {
+			final float x0 = triangles[t], y0 = triangles[t + 1], z0 = triangles[t + 2];
+			float x1 = triangles[t + 3], y1 = triangles[t + 4], z1 = triangles[t + 5];
+			float x2 = triangles[t + 6], y2 = triangles[t + 7], z2 = triangles[t + 8];
+			float area = (x1 - x0) * (y2 - y0) - (x2 - x0) * (y1 - y0);
+			if (area == 0) continue;
+			if (area < 0) {
+				// Both sides are drawn, turned counter clockwise so that the inside of each edge is on its left.
+				float swap = x1;
+				x1 = x2;
+				x2 = swap;
+				swap = y1;
+				y1 = y2;
+				y2 = swap;
+				swap = z1;
+				z1 = z2;
+				z2 = swap;
+				area = -area;
+			}
+			final int rowStart = Math.max(start, (int)Math.ceil(Math.min(y0, Math.min(y1, y2)) - 0.5f));
+			final int rowEnd = Math.min(end - 1, (int)Math.floor(Math.max(y0, Math.max(y1, y2)) - 0.5f));
+			if (rowStart > rowEnd) continue;
+			// The depth is a plane in screen space.
+			final float dzdx = ((z1 - z0) * (y2 - y0) - (z2 - z0) * (y1 - y0)) / area;
+			final float dzdy = ((z2 - z0) * (x1 - x0) - (z1 - z0) * (x2 - x0)) / area;
+			for (int y = rowStart; y <= rowEnd; y++) {
+				final float py = y + 0.5f;
+				// Each edge function is linear in x along the row, the span is where all three are positive.
+				float minX = 0, maxX = width;
+				for (int e = 0; e < 3; e++) {
+					final float ax = e == 0 ? x0 : (e == 1 ? x1 : x2), ay = e == 0 ? y0 : (e == 1 ? y1 : y2);
+					final float bx = e == 0 ? x1 : (e == 1 ? x2 : x0), by = e == 0 ? y1 : (e == 1 ? y2 : y0);
+					final float slope = ay - by, offset = (bx - ax) * (py - ay) + (by - ay) * ax;
+					if (slope > 0)
+						minX = Math.max(minX, -offset / slope);
+					else if (slope < 0)
+						maxX = Math.min(maxX, -offset / slope);
+					else if (offset < 0) {
+						minX = maxX;
+						break;
+					}
+				}
+				final int spanStart = Math.max(0, (int)Math.ceil(minX - 0.5f));
+				final int spanEnd = Math.min(width - 1, (int)Math.floor(maxX - 0.5f));
+				final int row = y * width;
+				final float rowDepth = z0 + dzdy * (py - y0) + dzdx * (0.5f - x0);
+				for (int x = spanStart; x <= spanEnd; x++)
+					depth[row + x] = Math.min(depth[row + x], rowDepth + dzdx * x);
+			}
+		}
+	}
+
+	/** Fills each level with the farthest depth of the up to four texels below each of its texels. */
+	private void buildHierarchy () {
+		for (int i = 1; i < levels.length; i++) {
+			final float[] source = levels[i - 1], target = levels[i];
+			final int sourceWidth = levelWidths[i - 1], sourceHeight = levelHeights[i - 1];
+			final int targetWidth = levelWidths[i], targetHeight = levelHeights[i];
+			for (int y = 0; y < targetHeight; y++) {
+				final int row0 = 2 * y * sourceWidth, row1 = Math.min(2 * y + 1, sourceHeight - 1) * sourceWidth;
+				for (int x = 0, target0 = y * targetWidth; x < targetWidth; x++) {
+					final int x0 = 2 * x, x1 = Math.min(2 * x + 1, sourceWidth - 1);
+					target[target0 + x] = Math.max(Math.max(source[row0 + x0], source[row0 + x1]),
+						Math.max(source[row1 + x0], source[row1 + x1]));
+				}
+			}
+		}
+	}
+
+	/** Returns true if the world bounds of the actor3d are hidden by the occluders drawn by the last {@link #render(Camera,
+	 * ForkJoinPool)}. Bounds crossing the near plane or empty are never hidden. */
+	public boolean isOccluded (Actor3d actor3d) {
+		final BoundingBox box = actor3d.worldBounds;
+		if (Actor3d.isEmpty(box)) return false;
+		testedCount++;
+		final float[] m = combined.val;
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+		float nearest = Float.MAX_VALUE;
+		for (int c = 0; c < 8; c++) {
+			final float x = (c & 1) == 0 ? box.min.x : box.max.x;
+			final float y = (c & 2) == 0 ? box.min.y : box.max.y;
+			final float z = (c & 4) == 0 ? box.min.z : box.max.z;
+			final float w = m[Matrix4.M30] * x + m[Matrix4.M31] * y + m[Matrix4.M32] * z + m[Matrix4.M33];
+			if (w < NEAR_W) return false;
+			final float invW = 1 / w;
+			final float sx = ((m[Matrix4.M00] * x + m[Matrix4.M01] * y + m[Matrix4.M02] * z + m[Matrix4.M03]) * invW + 1) * width / 2;
+			final float sy = ((m[Matrix4.M10] * x + m[Matrix4.M11] * y + m[Matrix4.M12] * z + m[Matrix4.M13]) * invW + 1) * height / 2;
+			minX = Math.min(minX, sx);
+			maxX = Math.max(maxX, sx);
+			minY = Math.min(minY, sy);
+			maxY = Math.max(maxY, sy);
+			nearest = Math.min(nearest, (m[Matrix4.M20] * x + m[Matrix4.M21] * y + m[Matrix4.M22] * z + m[Matrix4.M23]) * invW);
+		}
+		if (maxX < 0 || maxY < 0 || minX > width || minY > height) return false;
+		// Grown by a texel, since a texel counts as covered by an occluder as soon as its center is.
+		final int x0 = Math.max(0, (int)Math.floor(minX) - 1), y0 = Math.max(0, (int)Math.floor(minY) - 1);
+		final int x1 = Math.min(width - 1, (int)maxX + 1), y1 = Math.min(height - 1, (int)maxY + 1);
+		// The coarsest level where the rectangle still spans no more than a few texels per axis.
+		int level = 0;
+		while (level < levels.length - 1 && Math.max(x1 - x0, y1 - y0) >> level >= TEST_TEXELS)
+			level++;
+		final float[] depth = levels[level];
+		final int levelWidth = levelWidths[level];
+		for (int y = y0 >> level, endY = y1 >> level; y <= endY; y++)
+			for (int x = x0 >> level, endX = x1 >> level; x <= endX; x++)
+				if (nearest <= depth[y * levelWidth + x]) return false;
+		occludedCount++;
+		return true;
+	}
+
+	public int getWidth () {
+		return width;
+	}
+
+	public int getHeight () {
+		return height;
+	}
+
+	/** Returns the number of occluder triangles drawn by the last render. */
+	public int getTriangleCount () {
+		return triangleCount;
+	}
+
+	/** Returns the number of actor3ds and groups tested since the last render. */
+	public int getTestedCount () {
+		return testedCount;
+	}
+
+	/** Returns the number of actor3ds and groups found hidden since the last render. */
+	public int getOccludedCount () {
+		return occludedCount;
+	}
+
+	@SuppressWarnings("serial")
+	private class RasterTask extends RecursiveAction {
+		int start, end;
+
+		protected void compute () {
+			rasterize(start, end);
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package scene3d;
+
+/** Fired by {@link Stage3d#act(float)} on both actor3ds when they start or stop overlapping, see
+ * {@link Stage3d#enableOverlapEvents()}. The events are pooled, listeners must not keep them.
+ * @see SweepAndPrune */
+public class OverlapEvent3d extends Event3d {
+	private Type type;
+	private Actor3d relatedActor;
+
+	public void reset () {
+		super.reset();
+		type = null;
+		relatedActor = null;
+	}
+
+	public Type getType () {
+		return type;
+	}
+
+	public void setType (Type type) {
+		this.type = type;
+	}
+
+	/** The other actor3d of the overlap. */
+	public Actor3d getRelatedActor () {
+		return relatedActor;
+	}
+
+	public void setRelatedActor (Actor3d relatedActor) {
+		this.relatedActor = relatedActor;
+	}
+
+	public String toString () {
+		return type.toString();
+	}
+
+	static public enum Type {
+		/** The target and the related actor3d started overlapping. */
+		begin,
+		/** The target and the related actor3d stopped overlapping, or one of them left the stage. */
+		end
+	}
+}
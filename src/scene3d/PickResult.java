@@ -0,0 +1,45 @@
+package scene3d;
+
+import scene3d.utils.TriangleTree;
+
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.Ray;
+
+/** The nearest hit of a ray, filled by {@link Stage3d#pick(Ray)} and {@link Actor3d#intersect(Ray, PickResult)}. */
+public class PickResult {
+	/** The actor3d that was hit, or null if nothing was hit. */
+	public Actor3d actor3d;
+	/** The distance from the ray origin to the hit, in world units. Infinite if nothing was hit. */
+	public float distance = Float.POSITIVE_INFINITY;
+	/** The hit point in world space. */
+	public final Vector3 point = new Vector3();
+	/** The unit normal in world space of the triangle that was hit, or zero if only the bounds of the actor3d were tested. */
+	public final Vector3 normal = new Vector3();
+	/** The index of the triangle that was hit, see {@link TriangleTree#getHitTriangle()}, or -1 if only the bounds of the
+	 * actor3d were tested. */
+	public int triangle = -1;
+
+	/** Forgets the hit, so that any hit is closer. */
+	public PickResult reset () {
+		actor3d = null;
+		distance = Float.POSITIVE_INFINITY;
+		point.set(0, 0, 0);
+		normal.set(0, 0, 0);
+		triangle = -1;
+		return this;
+	}
+
+	/** Stores a hit of the bounds of the actor3d at the distance along the ray. */
+	public void set (Actor3d actor3d, Ray ray, float distance) {
+		this.actor3d = actor3d;
+		this.distance = distance;
+		point.set(ray.direction).scl(distance).add(ray.origin);
+		normal.set(0, 0, 0);
+		triangle = -1;
+	}
+
+	/** Returns true if something was hit. */
+	public boolean hasHit () {
+		return actor3d != null;
+	}
+}
@@ -0,0 +1,296 @@
+package scene3d;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.g3d.Environment;
+import com.badlogic.gdx.graphics.g3d.ModelBatch;
+import com.badlogic.gdx.math.Frustum;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Plane;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IdentityMap;
+import com.badlogic.gdx.utils.SnapshotArray;
+
+/** A group for building interiors, whose child groups are cells, eg rooms, connected by portals, eg doors and windows. When the
+ * camera is inside a cell, only the cells seen through a chain of portals are drawn: starting at the cell of the camera, the
+ * frustum is narrowed to the part of each visible portal inside of it and the cell behind it is culled against the narrowed
+ * frustum, and so on. A frustum has only four sides, so the narrowed frustum goes through the smallest rectangle in the plane of
+ * the portal around that part, which is exact for the usual rectangular doors and windows seen past rectangular ones.
+ * <p>
+ * The cell of the camera is the smallest cell whose world bounds contain it. When the camera is in no cell, everything is culled
+ * against the frustum of the camera as in any group. Children that are not cells are always culled that way too. A cell reached
+ * through several chains of portals is culled against the frustum of the camera, so that it is drawn once. The views of
+ * {@link Stage3d#cull(View3d...)} cull all cells against their frustum. */
+public class PortalGroup3d extends Group3d {
+	private final Array<Group3d> cells = new Array<Group3d>(false, 8, Group3d.class);
+	private final Array<Portal> portals = new Array<Portal>(false, 8, Portal.class);
+	private int maxDepth = 8;
+
+	/** The frustum each cell was reached with during the current draw. */
+	private final IdentityMap<Group3d, Frustum> reached = new IdentityMap<Group3d, Frustum>();
+	/** The cells on the chain of portals being followed. */
+	private final Array<Group3d> path = new Array<Group3d>(false, 8, Group3d.class);
+	private final Array<Frustum> frustums = new Array<Frustum>(false, 8, Frustum.class);
+	private int frustumCount, visitedCellCount, clippedCount;
+	private final Vector3 edge1 = new Vector3(), edge2 = new Vector3(), normal = new Vector3(), centroid = new Vector3();
+	private final Vector3 axisU = new Vector3(), axisV = new Vector3();
+	/** The polygons of the portal clipping, a quad clipped by four planes has at most eight corners. */
+	private final Vector3[] polygon = newVectors(8), clipped = newVectors(8), rectangle = newVectors(4);
+
+	/** Connects two child groups by a portal, both ways. The groups become cells.
+	 * @param corners The four corners of the portal quad in order around it, in the space of this group. */
+	public Portal addPortal (Group3d cell1, Group3d cell2, Vector3... corners) {
+		if (cell1.getParent() != this || cell2.getParent() != this)
+			throw new IllegalArgumentException("The cells must be children of the portal group.");
+		if (corners.length != 4) throw new IllegalArgumentException("A portal must have 4 corners: " + corners.length);
+		final Portal portal = new Portal(cell1, cell2, corners);
+		portals.add(portal);
+		if (!cells.contains(cell1, true)) cells.add(cell1);
+		if (!cells.contains(cell2, true)) cells.add(cell2);
+		if (getStage3d() != null) getStage3d().sceneChanged();
+		return portal;
+	}
+
+	public boolean removePortal (Portal portal) {
+		if (!portals.removeValue(portal, true)) return false;
+		if (getStage3d() != null) getStage3d().sceneChanged();
+		return true;
+	}
+
+	/** Removes the portals of the cell, and the cell, if it is one. */
+	public void removeCell (Group3d cell) {
+		for (int i = portals.size - 1; i >= 0; i--)
+			if (portals.get(i).cell1 == cell || portals.get(i).cell2 == cell) portals.removeIndex(i);
+		if (cells.removeValue(cell, true) && getStage3d() != null) getStage3d().sceneChanged();
+	}
+
+	@Override
+	public boolean removeActor3d (Actor3d actor3d) {
+		if (actor3d instanceof Group3d) removeCell((Group3d)actor3d);
+		return super.removeActor3d(actor3d);
+	}
+
+	public Array<Group3d> getCells () {
+		return cells;
+	}
+
+	public Array<Portal> getPortals () {
+		return portals;
+	}
+
+	public int getMaxDepth () {
+		return maxDepth;
+	}
+
+	/** @param maxDepth The longest chain of portals followed from the cell of the camera. Default is 8. */
+	public void setMaxDepth (int maxDepth) {
+		this.maxDepth = maxDepth;
+	}
+
+	/** Returns the number of cells reached through portals by the last draw, or 0 if the camera was in no cell. */
+	public int getVisitedCellCount () {
+		return visitedCellCount;
+	}
+
+	/** Returns the smallest cell whose world bounds contain the point, or null. */
+	public Group3d findCell (Vector3 point) {
+		Group3d found = null;
+		float foundVolume = Float.MAX_VALUE;
+		for (int i = 0; i < cells.size; i++) {
+			final Group3d cell = cells.get(i);
+			final BoundingBox bounds = cell.getWorldBounds();
+			if (point.x < bounds.min.x || point.y < bounds.min.y || point.z < bounds.min.z || point.x > bounds.max.x
+				|| point.y > bounds.max.y || point.z > bounds.max.z) continue;
+			final float volume = bounds.getDimensions().x * bounds.getDimensions().y * bounds.getDimensions().z;
+			if (volume < foundVolume) {
+				found = cell;
+				foundVolume = volume;
+			}
+		}
+		return found;
+	}
+
+	/** Draws the cells seen through the portals from the cell of the camera, and the other children culled as usual. */
+	@Override
+	void drawChildren (ModelBatch modelBatch, Environment environment, Frustum frustum, boolean inside, float minScreenSize) {
+		final Camera camera = getStage3d().getDrawCamera();
+		final Group3d start = findCell(camera.position);
+		visitedCellCount = 0;
+		if (start == null) {
+			super.drawChildren(modelBatch, environment, frustum, inside, minScreenSize);
+			return;
+		}
+		for (int i = 0; i < portals.size; i++)
+			portals.get(i).updateWorldCorners(transform);
+		frustumCount = 0;
+		reached.clear();
+		path.add(start);
+		visit(start, frustum, camera, 0);
+		path.clear();
+
+		final SnapshotArray<Actor3d> children = getChildren();
+		final Actor3d[] actors = children.begin();
+		visibleCount = 0;
+		for (int i = 0, n = children.size; i < n; i++) {
+			final Actor3d child = actors[i];
+			if (child instanceof Group3d && cells.contains((Group3d)child, true)) {
+				final Frustum cellFrustum = reached.get((Group3d)child);
+				if (cellFrustum != null) drawChild(modelBatch, environment, cellFrustum, false, minScreenSize, child);
+			} else
+				drawChild(modelBatch, environment, frustum, inside, minScreenSize, child);
+		}
+		children.end();
+	}
+
+	/** Marks the cell as reached with the frustum, then follows its portals that are in the frustum. */
+	private void visit (Group3d cell, Frustum frustum, Camera camera, int depth) {
+		final Frustum reachedWith = reached.get(cell);
+		if (reachedWith == null) {
+			reached.put(cell, frustum);
+			visitedCellCount++;
+		} else if (reachedWith != frustum)
+			reached.put(cell, camera.frustum);
+		if (depth == maxDepth) return;
+		for (int i = 0, n = portals.size; i < n; i++) {
+			final Portal portal = portals.get(i);
+			final Group3d next = portal.cell1 == cell ? portal.cell2 : (portal.cell2 == cell ? portal.cell1 : null);
+			if (next == null || path.contains(next, true) || !portal.isIn(frustum)) continue;
+			final Frustum narrowed = narrow(portal, frustum, camera);
+			if (narrowed == null) continue;
+			path.add(next);
+			visit(next, narrowed, camera, depth + 1);
+			path.pop();
+		}
+	}
+
+	/** Returns the frustum from the camera through the part of the portal inside of the frustum, with the near and far planes of
+	 * the camera, or null if no part of the portal is inside. When the camera is about in the plane of the portal, eg walking
+	 * through a door, the sides are undefined and the frustum is not narrowed. */
+	private Frustum narrow (Portal portal, Frustum frustum, Camera camera) {
+		final Vector3[] corners = portal.worldCorners;
+		final Vector3 eye = camera.position;
+		normal.set(corners[1]).sub(corners[0]).crs(edge1.set(corners[3]).sub(corners[0])).nor();
+		if (Math.abs(normal.dot(eye) - normal.dot(corners[0])) < camera.near) return frustum;
+		final Vector3[] polygon = clip(corners, frustum);
+		if (polygon == null) return null;
+
+		// The rectangle around the clipped polygon, along the first edge of the portal.
+		final Vector3 origin = corners[0];
+		axisU.set(corners[1]).sub(origin).nor();
+		axisV.set(normal).crs(axisU);
+		float minU = Float.MAX_VALUE, minV = Float.MAX_VALUE, maxU = -Float.MAX_VALUE, maxV = -Float.MAX_VALUE;
+		for (int i = 0; i < clippedCount; i++) {
+			edge1.set(polygon[i]).sub(origin);
+			final float u = edge1.dot(axisU), v = edge1.dot(axisV);
+			minU = Math.min(minU, u);
+			maxU = Math.max(maxU, u);
+			minV = Math.min(minV, v);
+			maxV = Math.max(maxV, v);
+		}
+		rectangle[0].set(axisU).scl(minU).add(origin).add(edge1.set(axisV).scl(minV));
+		rectangle[1].set(axisU).scl(maxU).add(origin).add(edge1.set(axisV).scl(minV));
+		rectangle[2].set(axisU).scl(maxU).add(origin).add(edge1.set(axisV).scl(maxV));
+		rectangle[3].set(axisU).scl(minU).add(origin).add(edge1.set(axisV).scl(maxV));
+
+		if (frustumCount == frustums.size) frustums.add(new Frustum());
+		final Frustum narrowed = frustums.get(frustumCount++);
+		final Plane[] planes = narrowed.planes;
+		// The planes of a frustum face inward, in the order near, far, left, right, top, bottom.
+		planes[0].set(camera.frustum.planes[0]);
+		planes[1].set(camera.frustum.planes[1]);
+		centroid.set(rectangle[0]).add(rectangle[1]).add(rectangle[2]).add(rectangle[3]).scl(0.25f);
+		for (int i = 0; i < 4; i++) {
+			edge1.set(rectangle[i]).sub(eye);
+			edge2.set(rectangle[(i + 1) % 4]).sub(eye);
+			normal.set(edge1).crs(edge2).nor();
+			float d = -normal.dot(eye);
+			if (normal.dot(centroid) + d < 0) {
+				normal.scl(-1);
+				d = -d;
+			}
+			planes[2 + i].set(normal.x, normal.y, normal.z, d);
+		}
+		return narrowed;
+	}
+
+	/** Clips the quad by the side planes of the frustum. Returns the polygon left, with {@link #clippedCount} corners, or null if
+	 * nothing is left. */
+	private Vector3[] clip (Vector3[] corners, Frustum frustum) {
+		Vector3[] in = polygon, out = clipped;
+		for (int i = 0; i < 4; i++)
+			in[i].set(corners[i]);
+		int count = 4;
+		for (int p = 2; p < 6; p++) {
+			final Plane plane = frustum.planes[p];
+			int outCount = 0;
+			for (int i = 0; i < count; i++) {
+				final Vector3 a = in[i], b = in[(i + 1) % count];
+				final float da = plane.distance(a), db = plane.distance(b);
+				if (da >= 0) out[outCount++].set(a);
+				if (da >= 0 != db >= 0) out[outCount++].set(a).lerp(b, da / (da - db));
+			}
+			if (outCount < 3) return null;
+			final Vector3[] temp = in;
+			in = out;
+			out = temp;
+			count = outCount;
+		}
+		clippedCount = count;
+		return in;
+	}
+
+	static private Vector3[] newVectors (int count) {
+		final Vector3[] vectors = new Vector3[count];
+		for (int i = 0; i < count; i++)
+			vectors[i] = new Vector3();
+		return vectors;
+	}
+
+	/** A quad through which one cell sees another. */
+	static public class Portal {
+		final Group3d cell1, cell2;
+		final Vector3[] corners = new Vector3[4];
+		final Vector3[] worldCorners = new Vector3[4];
+
+		Portal (Group3d cell1, Group3d cell2, Vector3[] corners) {
+			this.cell1 = cell1;
+			this.cell2 = cell2;
+			for (int i = 0; i < 4; i++) {
+				this.corners[i] = new Vector3(corners[i]);
+				worldCorners[i] = new Vector3();
+			}
+		}
+
+		public Group3d getCell1 () {
+			return cell1;
+		}
+
+		public Group3d getCell2 () {
+			return cell2;
+		}
+
+		/** Returns the corners in the space of the portal group. */
+		public Vector3[] getCorners () {
+			return corners;
+		}
+
+		void updateWorldCorners (Matrix4 transform) {
+			for (int i = 0; i < 4; i++)
+				worldCorners[i].set(corners[i]).mul(transform);
+		}
+
+		/** Returns false if all corners are behind one of the planes of the frustum. */
+		boolean isIn (Frustum frustum) {
+			final Plane[] planes = frustum.planes;
+			for (int p = 0; p < planes.length; p++) {
+				final Plane plane = planes[p];
+				boolean outside = true;
+				for (int i = 0; i < 4 && outside; i++)
+					outside = plane.distance(worldCorners[i]) < 0;
+				if (outside) return false;
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,259 @@
+package scene3d;
+
+import scene3d.utils.MaterialIds;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.g3d.Environment;
+import com.badlogic.gdx.graphics.g3d.Material;
+import com.badlogic.gdx.graphics.g3d.ModelBatch;
+import com.badlogic.gdx.graphics.g3d.Renderable;
+import com.badlogic.gdx.graphics.g3d.RenderableProvider;
+import com.badlogic.gdx.graphics.g3d.Shader;
+import com.badlogic.gdx.graphics.g3d.attributes.BlendingAttribute;
+import com.badlogic.gdx.graphics.g3d.utils.RenderableSorter;
+import com.badlogic.gdx.graphics.g3d.utils.ShaderProvider;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IdentityMap;
+import com.badlogic.gdx.utils.Pool;
+
+/** Orders renderables to reduce the state changes between them. Every renderable gets a 64 bit key and the keys are sorted with
+ * a radix sort, which takes linear time and, unlike a comparison sort, doesn't call back into the renderables.
+ * <p>
+ * Opaque renderables come first, grouped by shader, then by material, then front to back so that the depth test rejects more
+ * fragments:<br>
+ * <code>pass (2 bits) | shader (12) | material (18) | depth (32)</code><br>
+ * Blended renderables come last, back to front as needed for them to blend correctly, and only grouped when at the same depth:
+ * <br>
+ * <code>pass (2 bits) | inverted depth (32) | shader (12) | material (18)</code><br>
+ * The shader and material ids are given in the order they are first seen. Equal materials share an id, so the copies each
+ * {@link Actor3d} makes of the materials of its model are still grouped.
+ * <p>
+ * It is the {@link RenderableSorter} of the {@link Stage3d#getModelBatch() model batch} of a stage3d, which collects the
+ * renderables of the actor3ds that pass culling and sorts them before drawing. It can also be filled with
+ * {@link #add(RenderableProvider, Environment)} and {@link #submit(RenderSink) submitted} to any {@link RenderSink}, eg to
+ * count the state changes without a GL context. */
+public class RenderQueue implements RenderableSorter {
+	static private final int SHADER_BITS = 12, MATERIAL_BITS = 18;
+	static private final long OPAQUE = 0L << 62, BLENDED = 1L << 62;
+
+	private final ShaderProvider shaderProvider;
+	private final Array<Renderable> renderables = new Array<Renderable>(false, 64, Renderable.class);
+	private final Pool<Renderable> pool = new Pool<Renderable>() {
+		protected Renderable newObject () {
+			return new Renderable();
+		}
+	};
+
+	private final IdentityMap<Shader, Integer> shaderIds = new IdentityMap<Shader, Integer>();
+	private final MaterialIds materialIds = new MaterialIds();
+
+	private long[] keys = new long[64], swapKeys = new long[64];
+	private Renderable[] swapRenderables = new Renderable[64];
+	private final int[][] histograms = new int[8][256];
+	private final Vector3 position = new Vector3();
+
+	/** Copies of the renderables last sorted while retaining, in their sorted order. */
+	private final Array<Renderable> retained = new Array<Renderable>(false, 64, Renderable.class);
+	private final Pool<Renderable> retainedPool = new Pool<Renderable>() {
+		protected Renderable newObject () {
+			return new Renderable();
+		}
+	};
+	private boolean retaining, replaying;
+	/** While true the sorts don't replace the retained renderables, eg while a {@link View3d} is drawn. */
+	boolean retainingPaused;
+
+	/** Creates a queue whose renderables keep the shader they were given. */
+	public RenderQueue () {
+		this(null);
+	}
+
+	/** @param shaderProvider Assigns the shader of the renderables {@link #add(RenderableProvider, Environment) added}, may be null
+	 *           to keep the shader they were given. */
+	public RenderQueue (ShaderProvider shaderProvider) {
+		this.shaderProvider = shaderProvider;
+	}
+
+	/** Adds the renderables of the provider, eg an {@link Actor3d}, to the queue. */
+	public void add (RenderableProvider provider, Environment environment) {
+		final int offset = renderables.size;
+		provider.getRenderables(renderables, pool);
+		for (int i = offset; i < renderables.size; i++) {
+			final Renderable renderable = renderables.get(i);
+			renderable.environment = environment;
+			if (shaderProvider != null) renderable.shader = shaderProvider.getShader(renderable);
+		}
+	}
+
+	/** Sorts the renderables added to the queue for the camera. */
+	public void sort (Camera camera) {
+		sortByKeys(camera, renderables);
+	}
+
+	/** Gives the renderables of the queue to the sink, in their current order. */
+	public void submit (RenderSink sink) {
+		final Renderable[] items = renderables.items;
+		for (int i = 0, n = renderables.size; i < n; i++)
+			sink.render(items[i]);
+	}
+
+	/** Removes all renderables from the queue. */
+	public void clear () {
+		pool.freeAll(renderables);
+		renderables.clear();
+	}
+
+	public Array<Renderable> getRenderables () {
+		return renderables;
+	}
+
+	/** Sorts the renderables by their keys, and keeps copies of them if {@link #setRetaining(boolean) retaining}. Renderables given
+	 * by {@link #replay(ModelBatch)} are already sorted and left as they are. */
+	public void sort (Camera camera, Array<Renderable> renderables) {
+		if (replaying) {
+			replaying = false;
+			return;
+		}
+		sortByKeys(camera, renderables);
+		if (retaining && !retainingPaused) retain(renderables);
+	}
+
+	/** Sorts the renderables by their keys. The sort is stable, so renderables with equal keys keep their order. */
+	private void sortByKeys (Camera camera, Array<Renderable> renderables) {
+		final int n = renderables.size;
+		if (n < 2) return;
+		if (keys.length < n) {
+			keys = new long[n];
+			swapKeys = new long[n];
+			swapRenderables = new Renderable[n];
+		}
+		long[] keys = this.keys, swapKeys = this.swapKeys;
+		// The array may not have been created with the component type.
+		Object[] items = renderables.items, swapItems = swapRenderables;
+		final int[][] histograms = this.histograms;
+		for (int digit = 0; digit < 8; digit++)
+			java.util.Arrays.fill(histograms[digit], 0);
+		if (shaderIds.size >= 1 << SHADER_BITS || materialIds.getIdCount() >= 1 << MATERIAL_BITS) clearIds();
+		for (int i = 0; i < n; i++) {
+			final long key = key(camera, (Renderable)items[i]);
+			keys[i] = key;
+			for (int digit = 0; digit < 8; digit++)
+				histograms[digit][(int)(key >>> (digit << 3)) & 0xff]++;
+		}
+		for (int digit = 0; digit < 8; digit++) {
+			final int[] histogram = histograms[digit];
+			// All keys share this byte, the pass wouldn't move anything.
+			if (histogram[(int)(keys[0] >>> (digit << 3)) & 0xff] == n) continue;
+			for (int i = 0, offset = 0; i < 256; i++) {
+				final int count = histogram[i];
+				histogram[i] = offset;
+				offset += count;
+			}
+			final int shift = digit << 3;
+			for (int i = 0; i < n; i++) {
+				final long key = keys[i];
+				final int index = histogram[(int)(key >>> shift) & 0xff]++;
+				swapKeys[index] = key;
+				swapItems[index] = items[i];
+			}
+			long[] tempKeys = keys;
+			keys = swapKeys;
+			swapKeys = tempKeys;
+			Object[] tempItems = items;
+			items = swapItems;
+			swapItems = tempItems;
+		}
+		if (items != renderables.items) System.arraycopy(items, 0, renderables.items, 0, n);
+		for (int i = 0; i < n; i++)
+			swapRenderables[i] = null;
+	}
+
+	private long key (Camera camera, Renderable renderable) {
+		final float[] m = renderable.worldTransform.val;
+		final float depth = position.set(m[Matrix4.M03], m[Matrix4.M13], m[Matrix4.M23]).dst2(camera.position);
+		// The bits of a positive float sort like the float.
+		final long depthBits = Float.floatToRawIntBits(depth) & 0xffffffffL;
+		final long shader = shaderId(renderable.shader);
+		final long material = materialIds.get(renderable.material) & (1 << MATERIAL_BITS) - 1;
+		if (isBlended(renderable.material))
+			return BLENDED | (~depthBits & 0xffffffffL) << 30 | shader << MATERIAL_BITS | material;
+		return OPAQUE | shader << 50 | material << 32 | depthBits;
+	}
+
+	static boolean isBlended (Material material) {
+		if (material == null) return false;
+		final BlendingAttribute blending = (BlendingAttribute)material.get(BlendingAttribute.Type);
+		return blending != null && blending.blended;
+	}
+
+	private long shaderId (Shader shader) {
+		if (shader == null) return 0;
+		Integer id = shaderIds.get(shader);
+		if (id == null) {
+			id = shaderIds.size + 1;
+			shaderIds.put(shader, id);
+		}
+		return id & (1 << SHADER_BITS) - 1;
+	}
+
+	/** Replaces the retained renderables with copies of the renderables. */
+	private void retain (Array<Renderable> renderables) {
+		retainedPool.freeAll(retained);
+		retained.clear();
+		for (int i = 0, n = renderables.size; i < n; i++) {
+			final Renderable renderable = renderables.get(i);
+			final Renderable copy = retainedPool.obtain();
+			copy.worldTransform.set(renderable.worldTransform);
+			copy.mesh = renderable.mesh;
+			copy.meshPartOffset = renderable.meshPartOffset;
+			copy.meshPartSize = renderable.meshPartSize;
+			copy.primitiveType = renderable.primitiveType;
+			copy.material = renderable.material;
+			copy.bones = renderable.bones;
+			copy.environment = renderable.environment;
+			copy.shader = renderable.shader;
+			copy.userData = renderable.userData;
+			retained.add(copy);
+		}
+	}
+
+	/** Hands the retained renderables to the model batch, in the order they were sorted in, which the next sort keeps. Call between
+	 * {@link ModelBatch#begin(Camera)} and {@link ModelBatch#end()}, and only while the camera and everything drawn is as it was
+	 * when they were retained. */
+	public void replay (ModelBatch modelBatch) {
+		final Renderable[] items = retained.items;
+		for (int i = 0, n = retained.size; i < n; i++)
+			modelBatch.render(items[i]);
+		replaying = true;
+	}
+
+	/** If true, every sort of a model batch keeps copies of the sorted renderables, which {@link #replay(ModelBatch)} draws again
+	 * without getting them from the actor3ds. Used by the {@link Stage3d#enableRetainedRendering() retained rendering} of the
+	 * stage3d. */
+	public void setRetaining (boolean retaining) {
+		this.retaining = retaining;
+		if (!retaining) {
+			retainedPool.freeAll(retained);
+			retained.clear();
+		}
+	}
+
+	public boolean isRetaining () {
+		return retaining;
+	}
+
+	/** Returns the renderables kept by the last sort while retaining. */
+	public Array<Renderable> getRetained () {
+		return retained;
+	}
+
+	/** Forgets the shader and material ids, so that the ones of disposed shaders don't pile up. They are given again as the
+	 * renderables are sorted. Done when the ids run out, materials changed after they were first seen are only grouped correctly
+	 * again after this. The materials of removed actor3ds are not kept alive by their ids. */
+	public void clearIds () {
+		shaderIds.clear();
+		materialIds.clear();
+	}
+}
@@ -0,0 +1,8 @@
+package scene3d;
+
+import com.badlogic.gdx.graphics.g3d.Renderable;
+
+/** Receives the renderables of a {@link RenderQueue} in their sorted order, see {@link RenderQueue#submit(RenderSink)}. */
+public interface RenderSink {
+	public void render (Renderable renderable);
+}
@@ -0,0 +1,229 @@
+package scene3d;
+
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntMap;
+import com.badlogic.gdx.utils.ObjectMap;
+
+/** A uniform grid over the world bounds of actor3ds, with the cells hashed into int keyed buckets so that the grid is unbounded
+ * and only occupied cells take memory. An actor3d is put in every cell its world bounds overlap, and moving it only touches the
+ * buckets when it crosses a cell boundary. This suits many small, fast moving actor3ds, eg projectiles, better than a tree.
+ * <p>
+ * Add it to a stage3d with {@link Stage3d#addSpatialIndex(SpatialIndex3d)} to keep it up to date. Given a group, only the
+ * descendants of that group are kept. Queries don't allocate, and see the world bounds as of the last {@link Stage3d#validate()}.
+ * The cell size should be about the size of the typical actor3d or query radius. Actor3ds overlapping more than
+ * {@link #MAX_CELLS} cells, eg a ground plane or terrain, are kept in a separate list that every query tests instead, so that they
+ * don't fill the buckets. */
+public class SpatialHashGrid implements SpatialIndex3d {
+	/** The most cells an actor3d is put in, larger actor3ds are tested by every query. */
+	static public final int MAX_CELLS = 64;
+
+	private final float cellSize, inverseCellSize;
+	private final Group3d group3d;
+	private final IntMap<Array<Entry>> buckets = new IntMap<Array<Entry>>();
+	private final Array<Array<Entry>> freeBuckets = new Array<Array<Entry>>(false, 16);
+	private final ObjectMap<Actor3d, Entry> entries = new ObjectMap<Actor3d, Entry>();
+	/** The entries overlapping more than {@link #MAX_CELLS} cells, which are in no bucket. */
+	private final Array<Entry> oversized = new Array<Entry>(false, 4, Entry.class);
+	/** Marks the entries already visited by the current query, because an entry is in every cell it overlaps. */
+	private int queryId;
+
+	/** Keeps all actor3ds of the stage3d. */
+	public SpatialHashGrid (float cellSize) {
+		this(cellSize, null);
+	}
+
+	/** @param group3d Only the descendants of this group are kept, may be null to keep all actor3ds. */
+	public SpatialHashGrid (float cellSize, Group3d group3d) {
+		this.cellSize = cellSize;
+		this.inverseCellSize = 1f / cellSize;
+		this.group3d = group3d;
+	}
+
+	public void update (Actor3d actor3d) {
+		final BoundingBox bounds = actor3d.worldBounds;
+		if (Actor3d.isEmpty(bounds) || (group3d != null && !actor3d.isDescendantOf(group3d))) {
+			remove(actor3d);
+			return;
+		}
+		final int minX = cell(bounds.min.x), minY = cell(bounds.min.y), minZ = cell(bounds.min.z);
+		final int maxX = cell(bounds.max.x), maxY = cell(bounds.max.y), maxZ = cell(bounds.max.z);
+		Entry entry = entries.get(actor3d);
+		if (entry != null) {
+			if (entry.minX == minX && entry.minY == minY && entry.minZ == minZ && entry.maxX == maxX && entry.maxY == maxY
+				&& entry.maxZ == maxZ) return;
+			removeFromCells(entry);
+		} else {
+			entry = new Entry(actor3d);
+			entries.put(actor3d, entry);
+		}
+		entry.minX = minX;
+		entry.minY = minY;
+		entry.minZ = minZ;
+		entry.maxX = maxX;
+		entry.maxY = maxY;
+		entry.maxZ = maxZ;
+		if (cellCount(minX, minY, minZ, maxX, maxY, maxZ) > MAX_CELLS) {
+			entry.oversized = true;
+			oversized.add(entry);
+			return;
+		}
+		for (int x = minX; x <= maxX; x++)
+			for (int y = minY; y <= maxY; y++)
+				for (int z = minZ; z <= maxZ; z++) {
+					final int key = key(x, y, z);
+					Array<Entry> bucket = buckets.get(key);
+					if (bucket == null) {
+						bucket = freeBuckets.size > 0 ? freeBuckets.pop() : new Array<Entry>(false, 4, Entry.class);
+						buckets.put(key, bucket);
+					}
+					bucket.add(entry);
+				}
+	}
+
+	public void remove (Actor3d actor3d) {
+		final Entry entry = entries.remove(actor3d);
+		if (entry != null) removeFromCells(entry);
+	}
+
+	public void clear () {
+		for (Array<Entry> bucket : buckets.values()) {
+			bucket.clear();
+			freeBuckets.add(bucket);
+		}
+		buckets.clear();
+		entries.clear();
+		oversized.clear();
+	}
+
+	/** Returns the number of actor3ds in the grid. */
+	public int size () {
+		return entries.size;
+	}
+
+	public float getCellSize () {
+		return cellSize;
+	}
+
+	private void removeFromCells (Entry entry) {
+		if (entry.oversized) {
+			oversized.removeValue(entry, true);
+			entry.oversized = false;
+			return;
+		}
+		for (int x = entry.minX; x <= entry.maxX; x++)
+			for (int y = entry.minY; y <= entry.maxY; y++)
+				for (int z = entry.minZ; z <= entry.maxZ; z++) {
+					final int key = key(x, y, z);
+					final Array<Entry> bucket = buckets.get(key);
+					if (bucket == null) continue;
+					bucket.removeValue(entry, true);
+					if (bucket.size == 0) {
+						buckets.remove(key);
+						freeBuckets.add(bucket);
+					}
+				}
+	}
+
+	/** Adds the actor3ds whose world bounds overlap the sphere to the array. */
+	public Array<Actor3d> query (Vector3 center, float radius, Array<Actor3d> out) {
+		return query(center.x, center.y, center.z, radius, out);
+	}
+
+	/** Adds the actor3ds whose world bounds overlap the sphere to the array. */
+	public Array<Actor3d> query (float x, float y, float z, float radius, Array<Actor3d> out) {
+		final int id = ++queryId;
+		final float radius2 = radius * radius;
+		final int minX = cell(x - radius), minY = cell(y - radius), minZ = cell(z - radius);
+		final int maxX = cell(x + radius), maxY = cell(y + radius), maxZ = cell(z + radius);
+		if (cellCount(minX, minY, minZ, maxX, maxY, maxZ) > buckets.size) {
+			for (Array<Entry> bucket : buckets.values())
+				querySphere(bucket, id, x, y, z, radius2, out);
+			querySphere(oversized, id, x, y, z, radius2, out);
+			return out;
+		}
+		for (int cx = minX; cx <= maxX; cx++)
+			for (int cy = minY; cy <= maxY; cy++)
+				for (int cz = minZ; cz <= maxZ; cz++) {
+					final Array<Entry> bucket = buckets.get(key(cx, cy, cz));
+					if (bucket != null) querySphere(bucket, id, x, y, z, radius2, out);
+				}
+		querySphere(oversized, id, x, y, z, radius2, out);
+		return out;
+	}
+
+	private void querySphere (Array<Entry> bucket, int id, float x, float y, float z, float radius2, Array<Actor3d> out) {
+		final Entry[] items = bucket.items;
+		for (int i = 0, n = bucket.size; i < n; i++) {
+			final Entry entry = items[i];
+			if (entry.queryId == id) continue;
+			entry.queryId = id;
+			final BoundingBox b = entry.actor3d.worldBounds;
+			final float dx = x < b.min.x ? b.min.x - x : (x > b.max.x ? x - b.max.x : 0);
+			final float dy = y < b.min.y ? b.min.y - y : (y > b.max.y ? y - b.max.y : 0);
+			final float dz = z < b.min.z ? b.min.z - z : (z > b.max.z ? z - b.max.z : 0);
+			if (dx * dx + dy * dy + dz * dz <= radius2) out.add(entry.actor3d);
+		}
+	}
+
+	/** Adds the actor3ds whose world bounds overlap the box to the array. */
+	public Array<Actor3d> query (BoundingBox box, Array<Actor3d> out) {
+		final int id = ++queryId;
+		final Vector3 min = box.min, max = box.max;
+		final int minX = cell(min.x), minY = cell(min.y), minZ = cell(min.z);
+		final int maxX = cell(max.x), maxY = cell(max.y), maxZ = cell(max.z);
+		if (cellCount(minX, minY, minZ, maxX, maxY, maxZ) > buckets.size) {
+			for (Array<Entry> bucket : buckets.values())
+				queryBox(bucket, id, min, max, out);
+			queryBox(oversized, id, min, max, out);
+			return out;
+		}
+		for (int cx = minX; cx <= maxX; cx++)
+			for (int cy = minY; cy <= maxY; cy++)
+				for (int cz = minZ; cz <= maxZ; cz++) {
+					final Array<Entry> bucket = buckets.get(key(cx, cy, cz));
+					if (bucket != null) queryBox(bucket, id, min, max, out);
+				}
+		queryBox(oversized, id, min, max, out);
+		return out;
+	}
+
+	private void queryBox (Array<Entry> bucket, int id, Vector3 min, Vector3 max, Array<Actor3d> out) {
+		final Entry[] items = bucket.items;
+		for (int i = 0, n = bucket.size; i < n; i++) {
+			final Entry entry = items[i];
+			if (entry.queryId == id) continue;
+			entry.queryId = id;
+			final BoundingBox b = entry.actor3d.worldBounds;
+			if (b.min.x <= max.x && b.max.x >= min.x && b.min.y <= max.y && b.max.y >= min.y && b.min.z <= max.z
+				&& b.max.z >= min.z) out.add(entry.actor3d);
+		}
+	}
+
+	private int cell (float value) {
+		return (int)Math.floor(value * inverseCellSize);
+	}
+
+	static private long cellCount (int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+		return (long)(maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1);
+	}
+
+	/** Hashes the cell coordinates. Different cells may share a key, which only costs extra bounds tests in that bucket. */
+	static private int key (int x, int y, int z) {
+		return x * 73856093 ^ y * 19349663 ^ z * 83492791;
+	}
+
+	static private class Entry {
+		final Actor3d actor3d;
+		/** The range of cells the world bounds overlapped when the entry was last put in the buckets. */
+		int minX, minY, minZ, maxX, maxY, maxZ;
+		/** True if the entry overlaps too many cells and is in the oversized list instead of the buckets. */
+		boolean oversized;
+		int queryId;
+
+		Entry (Actor3d actor3d) {
+			this.actor3d = actor3d;
+		}
+	}
+}
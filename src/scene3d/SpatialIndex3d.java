@@ -0,0 +1,16 @@
+package scene3d;
+
+/** A spatial structure over the world bounds of the actor3ds in a {@link Stage3d}. The stage3d keeps every index added with
+ * {@link Stage3d#addSpatialIndex(SpatialIndex3d)} up to date: actor3ds whose world bounds changed are passed to
+ * {@link #update(Actor3d)} once per {@link Stage3d#validate()}, and actor3ds leaving the stage3d to {@link #remove(Actor3d)}.
+ * Groups are not indexed, only the actor3ds that draw something. */
+public interface SpatialIndex3d {
+	/** Inserts the actor3d, or moves it if it is already in the index. Its world bounds are valid when this is called. */
+	public void update (Actor3d actor3d);
+
+	/** Removes the actor3d, if it is in the index. */
+	public void remove (Actor3d actor3d);
+
+	/** Removes all actor3ds. */
+	public void clear ();
+}
@@ -0,0 +1,212 @@
+package scene3d;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.badlogic.gdx.math.Frustum;
+import com.badlogic.gdx.math.Plane;
+import com.badlogic.gdx.math.Vector3;
+
+/** Tests many bounding spheres against a frustum at once. The centers and radii are packed in separate float arrays, and each
+ * block of spheres is tested against one plane at a time in a loop without branches, which the JIT can compile to SIMD
+ * instructions. The result is a bitset with a bit per sphere.
+ * <p>
+ * A sphere is visible under the same rule as {@link Frustum#sphereInFrustum(Vector3, float)}. Unlike
+ * {@link Actor3d#isCullable(Frustum)} it doesn't test the box, so an actor3d whose box is outside but whose sphere is inside
+ * still passes. Given a fork-join pool, eg the one of the stage3d when {@link Stage3d#enableParallelUpdate() parallel updates}
+ * are enabled, large batches are split over its threads. */
+public class SphereCuller {
+	/** The spheres tested per plane before moving to the next plane, few enough to stay in the cache between planes and a
+	 * multiple of 64 so each block fills whole words. */
+	static private final int BLOCK = 1024;
+	/** Below this many spheres the batch is not worth splitting over threads. */
+	static private final int PARALLEL_THRESHOLD = 16384;
+
+	private float[] xs, ys, zs, radii;
+	/** The smallest distance of each sphere in front of a plane, minus its radius, during a cull. */
+	private float[] margins;
+	private long[] visible;
+	private int size, visibleCount;
+	private final float[] planes = new float[4 * 6];
+
+	private CullTask[] tasks = new CullTask[0];
+	private final RecursiveAction cullAll = new RecursiveAction() {
+		protected void compute () {
+			invokeAll(tasks);
+		}
+	};
+
+	public SphereCuller () {
+		this(256);
+	}
+
+	public SphereCuller (int capacity) {
+		resize(Math.max(capacity, 64));
+	}
+
+	/** Adds a sphere and returns its index. */
+	public int add (float x, float y, float z, float radius) {
+		if (size == xs.length) resize(size * 2);
+		put(size, x, y, z, radius);
+		return size++;
+	}
+
+	/** Adds the bounding sphere of the actor3d in world space and returns its index. */
+	public int add (Actor3d actor3d) {
+		if (size == xs.length) resize(size * 2);
+		put(size, actor3d);
+		return size++;
+	}
+
+	public void set (int index, float x, float y, float z, float radius) {
+		if (index >= size) throw new IndexOutOfBoundsException("index can't be >= " + size + ": " + index);
+		put(index, x, y, z, radius);
+	}
+
+	/** Sets the sphere to the bounding sphere of the actor3d in world space, eg after it moved. An actor3d with nothing to draw is
+	 * never visible. */
+	public void set (int index, Actor3d actor3d) {
+		if (index >= size) throw new IndexOutOfBoundsException("index can't be >= " + size + ": " + index);
+		put(index, actor3d);
+	}
+
+	private void put (int index, float x, float y, float z, float radius) {
+		xs[index] = x;
+		ys[index] = y;
+		zs[index] = z;
+		radii[index] = radius;
+	}
+
+	private void put (int index, Actor3d actor3d) {
+		actor3d.validateTransform();
+		final Vector3 center = actor3d.worldCenter;
+		put(index, center.x, center.y, center.z,
+			Actor3d.isEmpty(actor3d.worldBounds) ? Float.NEGATIVE_INFINITY : actor3d.worldRadius);
+	}
+
+	/** Removes all spheres. */
+	public void clear () {
+		size = 0;
+		visibleCount = 0;
+	}
+
+	public int size () {
+		return size;
+	}
+
+	/** Tests all spheres against the frustum on the calling thread. */
+	public void cull (Frustum frustum) {
+		cull(frustum, null);
+	}
+
+	/** Tests all spheres against the frustum and sets their bits in {@link #getVisible()}.
+	 * @param pool May be null to test all spheres on the calling thread. */
+	public void cull (Frustum frustum, ForkJoinPool pool) {
+		final Plane[] frustumPlanes = frustum.planes;
+		for (int i = 0; i < 6; i++) {
+			final Plane plane = frustumPlanes[i];
+			planes[i * 4] = plane.normal.x;
+			planes[i * 4 + 1] = plane.normal.y;
+			planes[i * 4 + 2] = plane.normal.z;
+			planes[i * 4 + 3] = plane.d;
+		}
+		final int blockCount = (size + BLOCK - 1) / BLOCK;
+		if (pool == null || size < PARALLEL_THRESHOLD) {
+			visibleCount = cull(0, blockCount);
+			return;
+		}
+		final int parallelism = Math.min(pool.getParallelism(), blockCount);
+		if (tasks.length != parallelism) {
+			tasks = new CullTask[parallelism];
+			for (int i = 0; i < parallelism; i++)
+				tasks[i] = new CullTask();
+		}
+		for (int i = 0; i < parallelism; i++) {
+			final CullTask task = tasks[i];
+			task.reinitialize();
+			task.start = blockCount * i / parallelism;
+			task.end = blockCount * (i + 1) / parallelism;
+		}
+		cullAll.reinitialize();
+		pool.invoke(cullAll);
+		visibleCount = 0;
+		for (int i = 0; i < parallelism; i++)
+			visibleCount += tasks[i].count;
+	}
+
+	/** Tests the spheres of the blocks and writes their words of the bitset. The loops index all arrays alike, otherwise the JIT
+	 * doesn't vectorize them.
+	 * @return The number of visible spheres. */
+	private int cull (int startBlock, int endBlock) {
+		final float[] xs = this.xs, ys = this.ys, zs = this.zs, radii = this.radii, margins = this.margins, planes = this.planes;
+		final long[] visible = this.visible;
+		int count = 0;
+		for (int block = startBlock; block < endBlock; block++) {
+			final int start = block * BLOCK, end = Math.min(start + BLOCK, size);
+			float nx = planes[0], ny = planes[1], nz = planes[2], d = planes[3];
+			// The same sums as Frustum#sphereInFrustum, so that spheres touching a plane get the same result. A difference of floats is
+			// negative exactly when the first is smaller.
+			for (int i = start; i < end; i++)
+				margins[i] = nx * xs[i] + ny * ys[i] + nz * zs[i] - (-radii[i] - d);
+			for (int p = 4; p < 24; p += 4) {
+				nx = planes[p];
+				ny = planes[p + 1];
+				nz = planes[p + 2];
+				d = planes[p + 3];
+				for (int i = start; i < end; i++)
+					margins[i] = Math.min(margins[i], nx * xs[i] + ny * ys[i] + nz * zs[i] - (-radii[i] - d));
+			}
+			for (int i = start, word = start >>> 6; i < end; i += 64, word++) {
+				long bits = 0;
+				for (int j = 0, n = Math.min(64, end - i); j < n; j++)
+					bits |= (margins[i + j] >= 0 ? 1L : 0L) << j;
+				visible[word] = bits;
+				count += Long.bitCount(bits);
+			}
+		}
+		return count;
+	}
+
+	/** Returns true if the sphere was in the frustum at the last {@link #cull(Frustum, ForkJoinPool)}. */
+	public boolean isVisible (int index) {
+		return (visible[index >>> 6] & 1L << index) != 0;
+	}
+
+	/** Returns the bitset of the last {@link #cull(Frustum, ForkJoinPool)}, in which sphere i is visible if bit i % 64 of word
+	 * i / 64 is set. Only the words of the current spheres are valid, the array may be longer. */
+	public long[] getVisible () {
+		return visible;
+	}
+
+	/** Returns the number of spheres found visible by the last {@link #cull(Frustum, ForkJoinPool)}. */
+	public int getVisibleCount () {
+		return visibleCount;
+	}
+
+	private void resize (int capacity) {
+		final float[] xs = new float[capacity], ys = new float[capacity], zs = new float[capacity], radii = new float[capacity];
+		if (size > 0) {
+			System.arraycopy(this.xs, 0, xs, 0, size);
+			System.arraycopy(this.ys, 0, ys, 0, size);
+			System.arraycopy(this.zs, 0, zs, 0, size);
+			System.arraycopy(this.radii, 0, radii, 0, size);
+		}
+		this.xs = xs;
+		this.ys = ys;
+		this.zs = zs;
+		this.radii = radii;
+		margins = new float[capacity];
+		final long[] visible = new long[(capacity + 63) >>> 6];
+		if (this.visible != null) System.arraycopy(this.visible, 0, visible, 0, this.visible.length);
+		this.visible = visible;
+	}
+
+	@SuppressWarnings("serial")
+	private class CullTask extends RecursiveAction {
+		int start, end, count;
+
+		protected void compute () {
+			count = cull(start, end);
+		}
+	}
+}
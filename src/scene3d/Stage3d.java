@@ -1,5 +1,7 @@
 package scene3d;
 
+import scene3d.utils.FrustumUtils;
+
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.InputAdapter;
 import com.badlogic.gdx.graphics.Camera;
@@ -8,6 +10,8 @@ import com.badlogic.gdx.graphics.g3d.Environment;
 import com.badlogic.gdx.graphics.g3d.ModelBatch;
 import com.badlogic.gdx.graphics.g3d.attributes.ColorAttribute;
 import com.badlogic.gdx.graphics.g3d.environment.DirectionalLight;
+import com.badlogic.gdx.math.Frustum;
+import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.math.collision.Ray;
 import com.badlogic.gdx.scenes.scene2d.Actor;
@@ -18,12 +22,21 @@ import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.Disposable;
 import com.badlogic.gdx.utils.SnapshotArray;
 
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
 public class Stage3d extends InputAdapter implements Disposable {
 	private float width, height;
 	private final ModelBatch modelBatch;
+	/** Sorts the renderables of the model batch. */
+	private final RenderQueue renderQueue = new RenderQueue();
 	private Environment environment;
 
 	private PerspectiveCamera camera;
+	/** The camera of the draw in progress, else the camera of the stage3d. */
+	private Camera drawCamera;
+	/** The view of the draw in progress, or null. */
+	private View3d drawView;
 
 	private final Group3d root;
 	private Actor3d scrollFocus;
@@ -33,6 +46,47 @@ public class Stage3d extends InputAdapter implements Disposable {
 	private int selecting = -1;
     
     private boolean canHit = false;
+    
+    private TransformStore transformStore;
+    private ForkJoinPool updatePool;
+    
+    private final Array<SpatialIndex3d> spatialIndices = new Array<SpatialIndex3d>(0);
+    /** The actor3ds whose world bounds changed since the spatial indices were last updated. */
+    private final Array<Actor3d> boundsChanged = new Array<Actor3d>(false, 16);
+    private BoundsTree pickTree;
+    private SweepAndPrune overlaps;
+    private InstanceBatcher instanceBatcher;
+    private DynamicBatcher dynamicBatcher;
+    private boolean contributionCulling;
+    /** The size on screen below which actor3ds that don't set their own are not drawn. */
+    private float minScreenSize;
+    /** Turns a world radius at unit depth into a diameter in stage units, set for the camera of the current draw. */
+    private float screenScale;
+    private boolean perspective;
+    private int contributionCulled;
+    private OcclusionCuller occlusionCuller;
+    private boolean coherentCulling;
+    /** How far the camera may move before the actor3ds found well inside of its frustum are tested again. */
+    private float coherenceThreshold;
+    /** Bumped when the camera turned, changed its projection or moved farther than the threshold from where it was when the
+     * epoch began. An actor3d found inside of the frustum by more than the threshold stays inside for the whole epoch. */
+    int cullEpoch;
+    private final Vector3 epochPosition = new Vector3(), epochDirection = new Vector3(), epochUp = new Vector3();
+    private final float[] epochProjection = new float[16];
+    private int coherentTests, insideHits, planeHits;
+    /** Bumped when anything the stage3d draws changed, see {@link #getSceneVersion()}. */
+    private int sceneVersion;
+    /** Bumped when the combined matrix of the camera changed between two draws. */
+    private int cameraVersion;
+    private final float[] drawnCombined = new float[16];
+    private boolean retainedRendering, replayed;
+    /** The versions the retained renderables were drawn with, or -1. */
+    private int drawnSceneVersion = -1, drawnCameraVersion = -1;
+    /** The scene version of the last draw. */
+    private int lastDrawSceneVersion = -1;
+    private final PickResult pickResult = new PickResult();
+    /** The result of the deprecated hit3d methods, apart from the one {@link #pick(Ray)} returns. */
+    private final PickResult hitResult = new PickResult();
 
 
 	/** Creates a stage with a {@link #setViewport(float, float, boolean) viewport} equal to the device screen resolution. The stage
@@ -54,9 +108,10 @@ public class Stage3d extends InputAdapter implements Disposable {
 		root = new Group3d();
 		root.setStage3d(this);
 
-		modelBatch = new ModelBatch();
+		modelBatch = new ModelBatch(renderQueue);
 
 		camera =  new Camera3d();
+		drawCamera = camera;
 		environment = new Environment();
 		environment.set(new ColorAttribute(ColorAttribute.AmbientLight, 0.9f, 0.9f, 0.9f, 1f));
 		environment.add(new DirectionalLight().set(0.8f, 0f, 0f, -1f, -0.8f, -0.2f));
@@ -69,8 +124,9 @@ public class Stage3d extends InputAdapter implements Disposable {
 		this.height = height;
 		root = new Group3d();
 		root.setStage3d(this);
-		modelBatch = new ModelBatch();
+		modelBatch = new ModelBatch(renderQueue);
 		this.camera = camera;
+		drawCamera = camera;
 	}
 	
 	public Stage3d (float width, float height, PerspectiveCamera camera, Environment environment) {
@@ -78,8 +134,9 @@ public class Stage3d extends InputAdapter implements Disposable {
 		this.height = height;
 		root = new Group3d();
 		root.setStage3d(this);
-		modelBatch = new ModelBatch();
+		modelBatch = new ModelBatch(renderQueue);
 		this.camera = camera;
+		drawCamera = camera;
 		this.environment = environment;
 	}
 
@@ -134,22 +191,147 @@ public class Stage3d extends InputAdapter implements Disposable {
 
 	public void draw(){ 
 		camera.update();
-		if (!root.isVisible()) return;
+		if (!Arrays.equals(camera.combined.val, drawnCombined)) {
+			System.arraycopy(camera.combined.val, 0, drawnCombined, 0, 16);
+			cameraVersion++;
+		}
+		if (!root.isVisible()) {
+			lastDrawSceneVersion = sceneVersion;
+			return;
+		}
+		validate();
+		lastDrawSceneVersion = sceneVersion;
+		replayed = retainedRendering && sceneVersion == drawnSceneVersion && cameraVersion == drawnCameraVersion;
+		if (replayed) {
+			modelBatch.begin(camera);
+			renderQueue.replay(modelBatch);
+			modelBatch.end();
+			return;
+		}
+		drawnSceneVersion = sceneVersion;
+		drawnCameraVersion = cameraVersion;
+		contributionCulled = 0;
+		if (coherentCulling) updateCullEpoch();
+		// The projection maps y to [-1, 1] scaled by the cotangent of half the field of view, divided by the depth for a
+		// perspective camera, so a sphere of radius r covers a diameter of r * M11 * height / depth on screen.
+		screenScale = camera.projection.val[Matrix4.M11] * camera.viewportHeight;
+		perspective = camera.projection.val[Matrix4.M32] != 0;
+		if (occlusionCuller != null) occlusionCuller.render(camera, updatePool);
 		modelBatch.begin(camera);
+		if (instanceBatcher != null) instanceBatcher.begin();
+		if (dynamicBatcher != null) dynamicBatcher.begin();
 		root.draw(modelBatch, environment);
+		if (instanceBatcher != null) {
+			instanceBatcher.end();
+			instanceBatcher.render(modelBatch);
+		}
+		if (dynamicBatcher != null) {
+			dynamicBatcher.end(updatePool);
+			dynamicBatcher.render(modelBatch);
+		}
 		modelBatch.end();
 	}
 
+	/** Finds the actor3ds in the frustums of several views, eg the players of a split screen, a minimap and lights casting shadows,
+	 * in one walk of the hierarchy: the stage3d is validated once, and each group is classified once against the views that may
+	 * see it, so the views that see little of the scene cost little. Only frustum culling is done, the contribution and occlusion
+	 * culling of the stage3d are for its own camera, and a {@link PortalGroup3d} is culled as a plain group. The cameras of the
+	 * views are updated first.
+	 * @param views At most 32. */
+	public void cull (View3d... views){
+		if (views.length > 32) throw new IllegalArgumentException("At most 32 views can be culled at once: " + views.length);
+		for (int i = 0; i < views.length; i++) {
+			final View3d view = views[i];
+			view.visible.clear();
+			if (view.getCamera() != null) view.getCamera().update();
+		}
+		validate();
+		if (!root.isVisible()) return;
+		int mask = 0, inside = 0;
+		for (int i = 0; i < views.length; i++) {
+			final int result = root.cull(views[i].getFrustum());
+			if (result != FrustumUtils.OUTSIDE) mask |= 1 << i;
+			if (result == FrustumUtils.INSIDE) inside |= 1 << i;
+		}
+		if (mask != 0) root.cullChildren(views, mask, inside);
+	}
+	
+	/** Draws the actor3ds found visible by the last {@link #cull(View3d...)} as seen by the camera of the view, eg into the
+	 * viewport of a second player. Like {@link #draw()} it uses the model batch and environment of the stage3d, but nothing is
+	 * culled again. When the stage3d batches, the view is batched by batchers of its own with the same settings, because the
+	 * retained renderables of the stage3d still draw the batches of its last draw. */
+	public void draw (View3d view){
+		final Camera camera = view.getCamera();
+		if (camera == null) throw new IllegalArgumentException("Only a view with a camera can be drawn.");
+		final Array<Actor3d> visible = view.visible;
+		final InstanceBatcher instanceBatcher = this.instanceBatcher == null ? null : getInstanceBatcher(view);
+		final DynamicBatcher dynamicBatcher = this.dynamicBatcher == null ? null : getDynamicBatcher(view);
+		drawCamera = camera;
+		drawView = view;
+		// The retained renderables are for the camera of the stage3d, the ones of the view are not kept.
+		renderQueue.retainingPaused = true;
+		try {
+			modelBatch.begin(camera);
+			if (instanceBatcher != null) instanceBatcher.begin();
+			if (dynamicBatcher != null) dynamicBatcher.begin();
+			for (int i = 0, n = visible.size; i < n; i++)
+				visible.get(i).draw(modelBatch, environment);
+			if (instanceBatcher != null) {
+				instanceBatcher.end();
+				instanceBatcher.render(modelBatch);
+			}
+			if (dynamicBatcher != null) {
+				dynamicBatcher.end(updatePool);
+				dynamicBatcher.render(modelBatch);
+			}
+			modelBatch.end();
+		} finally {
+			drawCamera = this.camera;
+			drawView = null;
+			renderQueue.retainingPaused = false;
+		}
+	}
+
+	private InstanceBatcher getInstanceBatcher (View3d view){
+		if (view.instanceBatcher == null) view.instanceBatcher = new InstanceBatcher();
+		view.instanceBatcher.setInstancedShader(instanceBatcher.getInstancedShader());
+		return view.instanceBatcher;
+	}
+
+	private DynamicBatcher getDynamicBatcher (View3d view){
+		if (view.dynamicBatcher == null) view.dynamicBatcher = new DynamicBatcher();
+		final DynamicBatcher batcher = view.dynamicBatcher;
+		batcher.setMaxPartVertices(dynamicBatcher.getMaxPartVertices());
+		batcher.setMaxBatchVertices(dynamicBatcher.getMaxBatchVertices());
+		batcher.setVertexDataType(dynamicBatcher.getVertexDataType());
+		return batcher;
+	}
+
+	/** Brings the world transforms and bounds of all actor3ds and the {@link SpatialIndex3d spatial indices} up to date. This is
+	 * done by {@link #draw()} and before picking, but can be called to query the indices at other times. */
+	public void validate(){
+		if (transformStore != null) transformStore.update();
+		if (updatePool != null)
+			updatePool.invoke(new Group3d.ValidateTask(root));
+		else
+			root.validate();
+		updateSpatialIndices();
+	}
+
 	/** Calls {@link #act(float)} with {@link Graphics#getDeltaTime()}. */
 	public void act () {
 		act(Math.min(Gdx.graphics.getDeltaTime(), 1 / 30f));
 	}
 
 	/** Calls the {@link Actor#act(float)} method on each actor in the stage. Typically called each frame. This method also fires
-	 * enter and exit events.
+	 * enter and exit events. Afterwards {@link #isDirty()} tells whether the stage3d needs to be drawn again.
 	 * @param delta Time in seconds since the last frame. */
 	public void act(float delta) {
 		root.act(delta);
+		if (overlaps != null) {
+			validate();
+			overlaps.fireEvents();
+		}
 	}
 
 	/** Adds an actor to the root of the stage.
@@ -231,15 +413,27 @@ public class Stage3d extends InputAdapter implements Disposable {
 		return modelBatch;
 	}
 
+	/** Returns the sorter of the {@link #getModelBatch() model batch}, which orders what is drawn by shader, material and depth. */
+	public RenderQueue getRenderQueue () {
+		return renderQueue;
+	}
+
 	public PerspectiveCamera getCamera () {
 		return camera;
 	}
+	
+	/** Returns the camera the actor3ds are being drawn for, which is the camera of the view during {@link #draw(View3d)}, else the
+	 * camera of the stage3d. Actor3ds that draw differently by distance, such as a {@link LodActor3d}, use it. */
+	public Camera getDrawCamera () {
+		return drawCamera;
+	}
 
 	/** Sets the stage's camera. The camera must be configured properly or {@link #setViewport(float, float, boolean)} can be called
 	 * after the camera is set. {@link Stage#draw()} will call {@link Camera#update()} and use the {@link Camera#combined} matrix
 	 * for the SpriteBatch {@link SpriteBatch#setProjectionMatrix(com.badlogic.gdx.math.Matrix4) projection matrix}. */
 	public void setCamera (PerspectiveCamera camera) {
 		this.camera = camera;
+		drawCamera = camera;
 	}
 
 	/** Returns the root group which holds all actors in the stage. */
@@ -255,6 +449,416 @@ public class Stage3d extends InputAdapter implements Disposable {
 		return environment;
 	}
 	
+	/** Enables the structure-of-arrays {@link TransformStore} backing mode. The positions, rotations, scales and world matrices of
+	 * all actor3ds in the stage are then kept in contiguous arrays and the world transforms are updated in one linear pass at the
+	 * start of {@link #draw()}. This pays off for stages with many thousands of actor3ds. */
+	public void enableTransformStore(){
+		enableTransformStore(256);
+	}
+	
+	/** @param capacity The number of actor3ds to reserve room for. The store grows as needed. */
+	public void enableTransformStore(int capacity){
+		if (transformStore != null) return;
+		transformStore = new TransformStore(this, capacity);
+		addToTransformStore(root);
+	}
+	
+	public void disableTransformStore(){
+		if (transformStore == null) return;
+		removeFromTransformStore(root);
+		transformStore = null;
+	}
+	
+	/** @return May be null if the transform store is not enabled. */
+	public TransformStore getTransformStore(){
+		return transformStore;
+	}
+	
+	private void addToTransformStore(Actor3d actor3d){
+		transformStore.add(actor3d);
+		if (actor3d instanceof Group3d) {
+			SnapshotArray<Actor3d> children = ((Group3d)actor3d).getChildren();
+			for (int i = 0, n = children.size; i < n; i++)
+				addToTransformStore(children.get(i));
+		}
+	}
+	
+	private void removeFromTransformStore(Actor3d actor3d){
+		transformStore.remove(actor3d);
+		if (actor3d instanceof Group3d) {
+			SnapshotArray<Actor3d> children = ((Group3d)actor3d).getChildren();
+			for (int i = 0, n = children.size; i < n; i++)
+				removeFromTransformStore(children.get(i));
+		}
+	}
+	
+	/** Validates the world transforms and bounds of independent {@link Group3d} subtrees in parallel at the start of
+	 * {@link #draw()}, using a fork-join pool with one worker per core. The main thread only waits for the results, which are
+	 * ready before culling begins. Subtrees are split off when they have at least {@link Group3d#parallelThreshold} children. */
+	public void enableParallelUpdate(){
+		enableParallelUpdate(Runtime.getRuntime().availableProcessors());
+	}
+	
+	public void enableParallelUpdate(int parallelism){
+		if (updatePool != null) updatePool.shutdown();
+		updatePool = new ForkJoinPool(parallelism);
+	}
+	
+	public void disableParallelUpdate(){
+		if (updatePool == null) return;
+		updatePool.shutdown();
+		updatePool = null;
+	}
+	
+	public boolean isParallelUpdate(){
+		return updatePool != null;
+	}
+	
+	/** Adds an index that is kept up to date with the world bounds of all actor3ds in the stage, see {@link SpatialIndex3d}. */
+	public void addSpatialIndex(SpatialIndex3d index){
+		if (spatialIndices.contains(index, true)) return;
+		spatialIndices.add(index);
+		validate();
+		addToSpatialIndex(index, root);
+	}
+	
+	public void removeSpatialIndex(SpatialIndex3d index){
+		if (spatialIndices.removeValue(index, true)) index.clear();
+	}
+	
+	private void addToSpatialIndex(SpatialIndex3d index, Actor3d actor3d){
+		if (actor3d instanceof Group3d) {
+			SnapshotArray<Actor3d> children = ((Group3d)actor3d).getChildren();
+			for (int i = 0, n = children.size; i < n; i++)
+				addToSpatialIndex(index, children.get(i));
+		} else
+			index.update(actor3d);
+	}
+	
+	/** Returns a number that changes whenever actor3ds are added, removed, moved, shown or hidden, animated or drawn differently.
+	 * Changes it can't see, such as to materials, lights or occluders, are reported with {@link #invalidate()}. */
+	public int getSceneVersion(){
+		return sceneVersion;
+	}
+	
+	/** Returns a number that changes whenever a {@link #draw()} finds the camera moved or its projection changed. */
+	public int getCameraVersion(){
+		return cameraVersion;
+	}
+	
+	/** Returns true if the stage3d would draw something else than in the last {@link #draw()}: an action or animation ran, the
+	 * camera moved, or actor3ds were added, removed, moved, shown or hidden. Apps that are idle most of the time can turn off
+	 * continuous rendering and only {@link com.badlogic.gdx.Graphics#requestRendering() request rendering} when this is true
+	 * after {@link #act(float)}, or after input. */
+	public boolean isDirty(){
+		if (sceneVersion != lastDrawSceneVersion) return true;
+		camera.update();
+		return !Arrays.equals(camera.combined.val, drawnCombined);
+	}
+	
+	/** Tells the stage3d that something it draws changed in a way it can't see, eg a material or the environment, so that
+	 * {@link #enableRetainedRendering() retained rendering} gets the renderables from the actor3ds again. */
+	public void invalidate(){
+		sceneChanged();
+	}
+	
+	/** Called by the framework when anything the stage3d draws changed, possibly on a worker thread of the parallel update. Racing
+	 * increments may be lost, but the version still differs from the one drawn. */
+	void sceneChanged(){
+		sceneVersion++;
+	}
+	
+	/** Keeps the sorted renderables of a draw and draws them again, without culling or getting them from the actor3ds, for as long
+	 * as the {@link #getSceneVersion() scene} and the {@link #getCameraVersion() camera} stay unchanged. Mostly static views
+	 * then cost almost no CPU per frame. */
+	public void enableRetainedRendering(){
+		retainedRendering = true;
+		renderQueue.setRetaining(true);
+		drawnSceneVersion = -1;
+	}
+	
+	public void disableRetainedRendering(){
+		retainedRendering = false;
+		renderQueue.setRetaining(false);
+	}
+	
+	public boolean isRetainedRendering(){
+		return retainedRendering;
+	}
+	
+	/** Returns true if the last {@link #draw()} replayed the retained renderables. */
+	public boolean isReplayed(){
+		return replayed;
+	}
+	
+	/** Called by the framework when an actor3d joins the stage. */
+	void actorAdded(Actor3d actor3d){
+		sceneChanged();
+		if (transformStore != null) transformStore.add(actor3d);
+		worldBoundsChanged(actor3d);
+	}
+	
+	/** Called by the framework when an actor3d leaves the stage. */
+	void actorRemoved(Actor3d actor3d){
+		sceneChanged();
+		if (transformStore != null) transformStore.remove(actor3d);
+		for (int i = 0; i < spatialIndices.size; i++)
+			spatialIndices.get(i).remove(actor3d);
+	}
+	
+	/** Called by the framework when the world bounds of an actor3d were recomputed, possibly on a worker thread of the
+	 * {@link #enableParallelUpdate() parallel update}. The actor3d is queued until the next {@link #validate()}. */
+	void worldBoundsChanged(Actor3d actor3d){
+		sceneChanged();
+		actor3d.insideEpoch = -1;
+		if (spatialIndices.size == 0 || actor3d.boundsQueued || actor3d instanceof Group3d) return;
+		synchronized (boundsChanged) {
+			actor3d.boundsQueued = true;
+			boundsChanged.add(actor3d);
+		}
+	}
+	
+	private void updateSpatialIndices(){
+		final Array<Actor3d> boundsChanged = this.boundsChanged;
+		if (boundsChanged.size == 0) return;
+		final Array<SpatialIndex3d> spatialIndices = this.spatialIndices;
+		for (int i = 0, n = boundsChanged.size; i < n; i++) {
+			final Actor3d actor3d = boundsChanged.get(i);
+			actor3d.boundsQueued = false;
+			if (actor3d.getStage3d() != this) continue;
+			actor3d.validate();
+			for (int j = 0; j < spatialIndices.size; j++)
+				spatialIndices.get(j).update(actor3d);
+		}
+		boundsChanged.clear();
+	}
+	
+	/** Fires an {@link OverlapEvent3d} on actor3ds that start or stop overlapping at the end of each {@link #act(float)}. The
+	 * overlaps are found by a {@link SweepAndPrune} over the world bounds and confirmed with the oriented boxes of the models. */
+	public void enableOverlapEvents(){
+		if (overlaps != null) return;
+		overlaps = new SweepAndPrune();
+		addSpatialIndex(overlaps);
+	}
+	
+	public void disableOverlapEvents(){
+		if (overlaps == null) return;
+		removeSpatialIndex(overlaps);
+		overlaps = null;
+	}
+	
+	/** @return May be null if overlap events are not enabled. */
+	public SweepAndPrune getOverlaps(){
+		return overlaps;
+	}
+	
+	/** Draws the actor3ds through an {@link InstanceBatcher}, which groups the ones that share a mesh part and material and packs
+	 * their world transforms. Only worth it with an
+	 * {@link InstanceBatcher#setInstancedShader(com.badlogic.gdx.graphics.g3d.Shader) instanced shader}, else every instance is
+	 * still drawn on its own. */
+	public void enableInstancing(){
+		if (instanceBatcher == null) instanceBatcher = new InstanceBatcher();
+		sceneChanged();
+	}
+	
+	public void disableInstancing(){
+		instanceBatcher = null;
+		sceneChanged();
+	}
+	
+	/** @return May be null if instancing is not enabled. */
+	public InstanceBatcher getInstanceBatcher(){
+		return instanceBatcher;
+	}
+	
+	/** Draws the actor3ds with small meshes through a {@link DynamicBatcher}, which merges the ones with equal materials into a
+	 * few meshes every frame. Actor3ds it doesn't take go to the instance batcher, if enabled, or are drawn as usual. */
+	public void enableDynamicBatching(){
+		if (dynamicBatcher == null) dynamicBatcher = new DynamicBatcher();
+		sceneChanged();
+	}
+	
+	public void disableDynamicBatching(){
+		if (dynamicBatcher == null) return;
+		dynamicBatcher.dispose();
+		dynamicBatcher = null;
+		sceneChanged();
+	}
+	
+	/** Skips drawing the actor3ds whose bounding sphere covers a smaller diameter on screen than the size, in units of the stage
+	 * height, which are pixels unless the stage is scaled to the screen. Tiny props and debris far away then cost no draw calls.
+	 * Groups and actor3ds can override the size with {@link Actor3d#setMinScreenSize(float)}, eg with a size of 0 here only the
+	 * groups that set one are culled. */
+	public void enableContributionCulling(float minScreenSize){
+		contributionCulling = true;
+		this.minScreenSize = minScreenSize;
+		sceneChanged();
+	}
+	
+	public void disableContributionCulling(){
+		contributionCulling = false;
+		minScreenSize = 0;
+		sceneChanged();
+	}
+	
+	public boolean isContributionCulling(){
+		return contributionCulling;
+	}
+	
+	/** @return 0 if contribution culling is not enabled. */
+	public float getMinScreenSize(){
+		return minScreenSize;
+	}
+	
+	/** Returns the number of actor3ds in the frustum that the last {@link #draw()} skipped because they were too small on
+	 * screen. */
+	public int getContributionCulledCount(){
+		return contributionCulled;
+	}
+	
+	/** Returns true, and counts it as culled, if the bounding sphere of the actor3d covers less than the size on screen. Actor3ds
+	 * without bounds or around the camera are never too small. */
+	boolean isTooSmall(Actor3d actor3d, float minScreenSize){
+		final float radius = actor3d.worldRadius;
+		if (!contributionCulling || radius <= 0) return false;
+		float size = radius * screenScale;
+		if (perspective) {
+			final Vector3 position = camera.position, direction = camera.direction, center = actor3d.worldCenter;
+			final float depth = (center.x - position.x) * direction.x + (center.y - position.y) * direction.y
+				+ (center.z - position.z) * direction.z;
+			if (depth <= radius) return false;
+			size /= depth;
+		}
+		if (size >= minScreenSize) return false;
+		contributionCulled++;
+		return true;
+	}
+	
+	/** Makes the frustum culling of actor3ds use the results of the previous frames. An actor3d that was inside of the frustum of
+	 * the camera by more than the threshold is not tested again until the camera has moved farther than the threshold, turned or
+	 * changed its projection, or the actor3d moved. A mostly static scene seen by a slowly moving camera then costs few tests.
+	 * Actor3ds outside of the frustum are tested first against the plane that rejected them before, see
+	 * {@link Actor3d#isCullable(Frustum)}, which is done whether this is enabled or not.
+	 * @param threshold In world units. A larger threshold skips more tests while the camera moves, but fewer actor3ds are far
+	 *           enough inside of the frustum for it. */
+	public void enableCoherentCulling(float threshold){
+		coherentCulling = true;
+		coherenceThreshold = threshold;
+		epochProjection[0] = Float.NaN;
+	}
+	
+	public void disableCoherentCulling(){
+		coherentCulling = false;
+	}
+	
+	public boolean isCoherentCulling(){
+		return coherentCulling;
+	}
+	
+	public float getCoherenceThreshold(){
+		return coherenceThreshold;
+	}
+	
+	/** Returns the number of actor3ds tested against the frustum of the camera by the last {@link #draw()} while coherent culling
+	 * is enabled. */
+	public int getCoherentTestCount(){
+		return coherentTests;
+	}
+	
+	/** Returns the number of tested actor3ds that the last {@link #draw()} knew to be inside of the frustum from a previous frame. */
+	public int getInsideHitCount(){
+		return insideHits;
+	}
+	
+	/** Returns the number of tested actor3ds that the last {@link #draw()} rejected with the plane that rejected them before. */
+	public int getPlaneHitCount(){
+		return planeHits;
+	}
+	
+	/** Starts a new culling epoch if the camera turned, changed its projection or moved too far since the current one began. */
+	private void updateCullEpoch(){
+		coherentTests = insideHits = planeHits = 0;
+		if (camera.direction.equals(epochDirection) && camera.up.equals(epochUp)
+			&& Arrays.equals(camera.projection.val, epochProjection)
+			&& camera.position.dst2(epochPosition) < coherenceThreshold * coherenceThreshold) return;
+		cullEpoch++;
+		epochPosition.set(camera.position);
+		epochDirection.set(camera.direction);
+		epochUp.set(camera.up);
+		System.arraycopy(camera.projection.val, 0, epochProjection, 0, 16);
+	}
+	
+	/** Returns true if the actor3d is at least partially inside of the frustum, see {@link Actor3d#isCullable(Frustum)}. With
+	 * coherent culling the frustum of the camera is not tested for actor3ds known to be inside of it. */
+	boolean isCullable(Actor3d actor3d, Frustum frustum){
+		if (!coherentCulling || frustum != camera.frustum) return actor3d.isCullable(frustum);
+		coherentTests++;
+		actor3d.validateTransform();
+		if (actor3d.insideEpoch == cullEpoch) {
+			insideHits++;
+			return true;
+		}
+		final int cullPlane = actor3d.cullPlane;
+		if (!actor3d.isCullable(frustum)) {
+			if (actor3d.cullPlane == cullPlane) planeHits++;
+			return false;
+		}
+		// Moving the camera by less than the threshold moves each plane by less than it, so a sphere inside by more stays inside.
+		final Vector3 center = actor3d.worldCenter;
+		if (FrustumUtils.classify(frustum, center.x, center.y, center.z, actor3d.worldRadius + coherenceThreshold)
+			== FrustumUtils.INSIDE) actor3d.insideEpoch = cullEpoch;
+		return true;
+	}
+	
+	/** Skips drawing the actor3ds and groups that are hidden behind the occluders of an {@link OcclusionCuller} with a depth
+	 * buffer of 256 by 128 texels. Add the occluders to {@link #getOcclusionCuller()}. */
+	public void enableOcclusionCulling(){
+		enableOcclusionCulling(256, 128);
+	}
+	
+	/** Skips drawing the actor3ds and groups that are hidden behind the occluders of an {@link OcclusionCuller} with a depth
+	 * buffer of the size. Occluders added before are kept. */
+	public void enableOcclusionCulling(int width, int height){
+		final OcclusionCuller occlusionCuller = new OcclusionCuller(width, height);
+		if (this.occlusionCuller != null) occlusionCuller.getOccluders().addAll(this.occlusionCuller.getOccluders());
+		this.occlusionCuller = occlusionCuller;
+		sceneChanged();
+	}
+	
+	public void disableOcclusionCulling(){
+		occlusionCuller = null;
+		sceneChanged();
+	}
+	
+	/** @return May be null if occlusion culling is not enabled. */
+	public OcclusionCuller getOcclusionCuller(){
+		return occlusionCuller;
+	}
+	
+	/** Returns true if occlusion culling is enabled and the world bounds of the actor3d are hidden by the occluders. */
+	boolean isOccluded(Actor3d actor3d){
+		return occlusionCuller != null && occlusionCuller.isOccluded(actor3d);
+	}
+	
+	/** @return May be null if dynamic batching is not enabled. */
+	public DynamicBatcher getDynamicBatcher(){
+		return dynamicBatcher;
+	}
+	
+	/** Returns the dynamic batcher the actor3ds are being drawn through, which is the one of the view during
+	 * {@link #draw(View3d)}, or null. */
+	DynamicBatcher getDrawDynamicBatcher(){
+		if (dynamicBatcher == null) return null;
+		return drawView != null ? drawView.dynamicBatcher : dynamicBatcher;
+	}
+	
+	/** Returns the instance batcher the actor3ds are being drawn through, which is the one of the view during
+	 * {@link #draw(View3d)}, or null. */
+	InstanceBatcher getDrawInstanceBatcher(){
+		if (instanceBatcher == null) return null;
+		return drawView != null ? drawView.instanceBatcher : instanceBatcher;
+	}
+	
 	public void enableHit(){
 		canHit = true;
 	}
@@ -293,49 +897,60 @@ public class Stage3d extends InputAdapter implements Disposable {
         return selecting >= 0;
     }
  
-	Vector3 position = new Vector3();
-	int result = -1;
-    float distance = -1;
-    
+    /** Returns the nearest visible actor3d under the screen coordinates, or null. */
     public Actor3d getObject(int screenX, int screenY) {
-    	 Actor3d temp = null;
-    	 SnapshotArray<Actor3d> children = root.getChildren();
-    	 Actor3d[] actors = children.begin();
-         for(int i = 0, n = children.size; i < n; i++){
-        	 temp = hit3d(screenX, screenY, actors[i]);
-        	 if(actors[i] instanceof Group3d)
-        		 temp = hit3d(screenX, screenY, (Group3d)actors[i]);
-         }
-         children.end();
-         return temp;
+    	return pick(screenX, screenY).actor3d;
+    }
+    
+    /** Finds the nearest visible actor3d under the screen coordinates.
+     * @return the result, which is reused by the next pick */
+    public PickResult pick(int screenX, int screenY) {
+    	return pick(camera.getPickRay(screenX, screenY));
+    }
+    
+    /** Finds the nearest visible actor3d hit by the ray, whose direction must be normalized. The world bounds of all actor3ds are
+     * kept in a {@link BoundsTree}, built on the first pick, so the cost grows with the logarithm of the number of actor3ds.
+     * @return the result, which is reused by the next pick */
+    public PickResult pick(Ray ray) {
+    	if (pickTree == null) {
+    		pickTree = new BoundsTree();
+    		addSpatialIndex(pickTree);
+    	} else
+    		validate();
+    	pickTree.pick(ray, pickResult.reset());
+    	return pickResult;
     }
     
+    /** Returns the actor3d if it is under the screen coordinates, else null.
+     * @deprecated Use {@link #pick(int, int)}, or {@link Actor3d#intersect(Ray, PickResult)} to test one actor3d. */
+    @Deprecated
     public Actor3d hit3d(int screenX, int screenY, Actor3d actor3d) {
-        Ray ray = camera.getPickRay(screenX, screenY);
-        float distance = -1;
-        final float dist2 = actor3d.intersects(ray);
-        if (dist2 >= 0f && (distance < 0f || dist2 <= distance)) { 
-            distance = dist2;
-            return actor3d;
-        }
-        return null;
+    	return actor3d.intersect(camera.getPickRay(screenX, screenY), hitResult.reset()) ? actor3d : null;
     }
     
+    /** Returns the nearest descendant of the group under the screen coordinates, or null.
+     * @deprecated Use {@link #pick(int, int)}, which finds the nearest actor3d of the whole stage3d through its bounds tree. */
+    @Deprecated
     public Actor3d hit3d(int screenX, int screenY, Group3d group3d) {
-    	 Actor3d temp = null;
-    	 SnapshotArray<Actor3d> children = group3d.getChildren();
-    	 Actor3d[] actors = children.begin();
-         for(int i = 0, n = children.size; i < n; i++){
-        	 temp = hit3d(screenX, screenY, actors[i]);
-        	 if(actors[i] instanceof Group3d)
-        		 temp = hit3d(screenX, screenY, (Group3d)actors[i]);
-         }
-         children.end();
-         return temp;
+    	intersectChildren(camera.getPickRay(screenX, screenY), group3d, hitResult.reset());
+    	return hitResult.actor3d;
+    }
+    
+    private void intersectChildren(Ray ray, Group3d group3d, PickResult result) {
+    	final SnapshotArray<Actor3d> children = group3d.getChildren();
+    	for (int i = 0, n = children.size; i < n; i++) {
+    		final Actor3d child = children.get(i);
+    		if (child instanceof Group3d)
+    			intersectChildren(ray, (Group3d)child, result);
+    		else
+    			child.intersect(ray, result);
+    	}
     }
 
 	@Override
 	public void dispose() {
+		disableParallelUpdate();
+		disableDynamicBatching();
 		modelBatch.dispose();
 		clear();
 	}
@@ -0,0 +1,74 @@
+package scene3d;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+
+/** The merged meshes of the static actor3ds of a group, built by a {@link StaticBatcher}. Every chunk of space is one actor3d,
+ * with one mesh part per material, in a group added to the batched group. The original actor3ds stay where they were so that
+ * they can still be picked and get events, but are skipped when drawing. */
+public class StaticBatch implements Disposable {
+	final Group3d group3d = new ChunkGroup();
+	final Array<Actor3d> sources = new Array<Actor3d>(false, 16, Actor3d.class);
+	final Array<Actor3d> chunks = new Array<Actor3d>(false, 16, Actor3d.class);
+	int sourceDrawCalls, drawCalls;
+	long sourceBytes, bytes;
+
+	StaticBatch () {
+	}
+
+	/** Returns the group holding one actor3d per chunk. */
+	public Group3d getGroup3d () {
+		return group3d;
+	}
+
+	/** Returns the actor3ds that were merged, and groups whose whole content was. */
+	public Array<Actor3d> getSources () {
+		return sources;
+	}
+
+	/** Returns the number of chunks, each culled and drawn as one actor3d. */
+	public int getChunkCount () {
+		return chunks.size;
+	}
+
+	/** Returns the number of mesh parts the merged actor3ds drew, one draw call each. */
+	public int getSourceDrawCalls () {
+		return sourceDrawCalls;
+	}
+
+	/** Returns the number of mesh parts of the chunks. */
+	public int getDrawCalls () {
+		return drawCalls;
+	}
+
+	/** Returns the vertex and index bytes of the distinct meshes of the merged actor3ds. Those are shared between actor3ds of the
+	 * same model, and are still held by the originals. */
+	public long getSourceBytes () {
+		return sourceBytes;
+	}
+
+	/** Returns the vertex and index bytes of the merged meshes, which hold a copy of every instance. */
+	public long getBytes () {
+		return bytes;
+	}
+
+	/** Removes the chunks from the scene, draws the original actor3ds again and disposes of the merged meshes. */
+	public void dispose () {
+		group3d.remove();
+		for (int i = 0; i < sources.size; i++)
+			if (sources.get(i).staticBatch == this) sources.get(i).staticBatch = null;
+		sources.clear();
+		for (int i = 0; i < chunks.size; i++)
+			chunks.get(i).dispose();
+		chunks.clear();
+	}
+
+	public String toString () {
+		return sources.size + " actor3ds in " + chunks.size + " chunks, draw calls " + sourceDrawCalls + " -> " + drawCalls
+			+ ", mesh bytes " + sourceBytes + " shared -> " + bytes + " merged";
+	}
+
+	/** Tells the {@link StaticBatcher} not to merge the chunks again. */
+	static class ChunkGroup extends Group3d {
+	}
+}
@@ -0,0 +1,285 @@
+package scene3d;
+
+import scene3d.utils.MaterialIds;
+import scene3d.utils.VertexUtils;
+
+import com.badlogic.gdx.graphics.GL10;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.Mesh.VertexDataType;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.VertexAttributes.Usage;
+import com.badlogic.gdx.graphics.g3d.Material;
+import com.badlogic.gdx.graphics.g3d.Model;
+import com.badlogic.gdx.graphics.g3d.Renderable;
+import com.badlogic.gdx.graphics.g3d.model.MeshPart;
+import com.badlogic.gdx.graphics.g3d.model.Node;
+import com.badlogic.gdx.graphics.g3d.model.NodePart;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.IdentityMap;
+import com.badlogic.gdx.utils.LongMap;
+import com.badlogic.gdx.utils.Pool;
+import com.badlogic.gdx.utils.ShortArray;
+
+/** Merges the meshes of the {@link Actor3d#setStatic(boolean) static} actor3ds of a group into a few large meshes, so that
+ * level geometry is culled and drawn as a handful of actor3ds instead of one per prop. Space is cut into cubic chunks of the
+ * {@link #setChunkSize(float) chunk size}, every actor3d goes into the chunk of its center, and in each chunk the mesh parts
+ * with equal materials and vertex layouts are merged into one, baked into the space of the group.
+ * <p>
+ * Smaller chunks cull better, larger ones draw fewer parts; the {@link StaticBatch} tells both counts and the memory the merged
+ * meshes take. Skinned parts and triangle strips or fans can't be merged, actor3ds with such parts are left as they are. Build
+ * the batch once the scene is set up, and {@link StaticBatch#dispose() dispose} it before moving any of its actor3ds. */
+public class StaticBatcher {
+	/** The most vertices short indices can address. */
+	static private final int MAX_VERTICES = 1 << 16;
+
+	private float chunkSize;
+	private VertexDataType vertexDataType = VertexDataType.VertexBufferObject;
+
+	private final MaterialIds materialIds = new MaterialIds();
+	private final LongMap<Array<Piece>> chunks = new LongMap<Array<Piece>>();
+	private final IdentityMap<Mesh, float[]> vertices = new IdentityMap<Mesh, float[]>();
+	private final IdentityMap<Mesh, short[]> indices = new IdentityMap<Mesh, short[]>();
+	private final Array<Renderable> renderables = new Array<Renderable>(false, 16, Renderable.class);
+	private final Pool<Renderable> pool = new Pool<Renderable>() {
+		protected Renderable newObject () {
+			return new Renderable();
+		}
+	};
+	private final Matrix4 toGroup = new Matrix4(), transform = new Matrix4();
+	private final Vector3 center = new Vector3();
+	/** The merged index of each vertex of the current source mesh part, valid where the stamp is current. */
+	private int[] remap = new int[64], remapStamps = new int[64];
+	private int stamp;
+
+	/** @param chunkSize The size of the cubic chunks, in the units of the batched group. */
+	public StaticBatcher (float chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	/** Merges the static actor3ds below the group, adds the chunks to the group and returns the batch that holds them. */
+	public StaticBatch build (Group3d group3d) {
+		final StaticBatch batch = new StaticBatch();
+		group3d.validateTransform();
+		toGroup.set(group3d.transform).inv();
+		collect(group3d, group3d.isStatic(), batch);
+
+		final Array<Actor3d> chunks = batch.chunks;
+		for (Array<Piece> pieces : this.chunks.values()) {
+			final Model model = new Model();
+			final Node node = new Node();
+			for (int i = 0; i < pieces.size; i++) {
+				final Piece piece = pieces.get(i);
+				final Mesh mesh = new Mesh(vertexDataType, true, piece.vertexCount, piece.indices.size, VertexUtils.copy(piece.attributes));
+				mesh.setVertices(piece.vertices.items, 0, piece.vertices.size);
+				mesh.setIndices(piece.indices.items, 0, piece.indices.size);
+				final MeshPart meshPart = new MeshPart();
+				meshPart.mesh = mesh;
+				meshPart.indexOffset = 0;
+				meshPart.numVertices = piece.indices.size;
+				meshPart.primitiveType = piece.primitiveType;
+				final NodePart nodePart = new NodePart();
+				nodePart.meshPart = meshPart;
+				nodePart.material = piece.material;
+				node.parts.add(nodePart);
+				model.meshes.add(mesh);
+				model.meshParts.add(meshPart);
+				if (!model.materials.contains(piece.material, true)) model.materials.add(piece.material);
+				model.manageDisposable(mesh);
+				batch.bytes += (long)piece.vertices.size * 4 + piece.indices.size * 2;
+				batch.drawCalls++;
+			}
+			model.nodes.add(node);
+			final Actor3d chunk = new Actor3d(model);
+			chunks.add(chunk);
+			batch.group3d.addActor3d(chunk);
+		}
+		for (float[] meshVertices : vertices.values())
+			batch.sourceBytes += meshVertices.length * 4;
+		for (short[] meshIndices : indices.values())
+			batch.sourceBytes += meshIndices.length * 2;
+		group3d.addActor3d(batch.group3d);
+
+		this.chunks.clear();
+		vertices.clear();
+		indices.clear();
+		materialIds.clear();
+		return batch;
+	}
+
+	/** Merges the static descendants of the group.
+	 * @return True if all of them were merged. */
+	private boolean collect (Group3d group3d, boolean isStatic, StaticBatch batch) {
+		boolean merged = true;
+		final Array<Actor3d> children = group3d.getChildren();
+		for (int i = 0, n = children.size; i < n; i++) {
+			final Actor3d child = children.get(i);
+			if (child instanceof StaticBatch.ChunkGroup || child.staticBatch != null) continue;
+			final boolean childStatic = isStatic || child.isStatic();
+			final boolean childMerged;
+			if (child instanceof Group3d)
+				childMerged = collect((Group3d)child, childStatic, batch);
+			else
+				childMerged = childStatic && merge(child, batch);
+			if (childMerged && childStatic) {
+				child.staticBatch = batch;
+				batch.sources.add(child);
+			} else
+				merged = false;
+		}
+		return merged;
+	}
+
+	/** Adds the mesh parts of the actor3d to the pieces of its chunk.
+	 * @return False if one of them can't be merged, then none is. */
+	private boolean merge (Actor3d actor3d, StaticBatch batch) {
+		actor3d.validateTransform();
+		final Array<Renderable> renderables = this.renderables;
+		actor3d.getRenderables(renderables, pool);
+		boolean mergeable = renderables.size > 0;
+		for (int i = 0; i < renderables.size && mergeable; i++) {
+			final Renderable renderable = renderables.get(i);
+			final int type = renderable.primitiveType;
+			mergeable = renderable.bones == null && (type == GL10.GL_TRIANGLES || type == GL10.GL_LINES || type == GL10.GL_POINTS)
+				&& renderable.meshPartSize <= MAX_VERTICES && renderable.mesh.getVertexAttribute(Usage.Position) != null;
+		}
+		if (mergeable) {
+			center.set(actor3d.worldCenter).mul(toGroup);
+			final Array<Piece> pieces = chunk(center);
+			for (int i = 0; i < renderables.size; i++)
+				append(pieces, renderables.get(i));
+			batch.sourceDrawCalls += renderables.size;
+		}
+		pool.freeAll(renderables);
+		renderables.clear();
+		return mergeable;
+	}
+
+	private Array<Piece> chunk (Vector3 position) {
+		final long x = (long)Math.floor(position.x / chunkSize) & 0x1fffff, y = (long)Math.floor(position.y / chunkSize) & 0x1fffff;
+		final long z = (long)Math.floor(position.z / chunkSize) & 0x1fffff;
+		final long key = x << 42 | y << 21 | z;
+		Array<Piece> pieces = chunks.get(key);
+		if (pieces == null) {
+			pieces = new Array<Piece>(false, 4, Piece.class);
+			chunks.put(key, pieces);
+		}
+		return pieces;
+	}
+
+	/** Copies the vertices of the mesh part, moved into the space of the group, to a piece with the same material and layout. */
+	private void append (Array<Piece> pieces, Renderable renderable) {
+		final Mesh mesh = renderable.mesh;
+		final VertexAttributes attributes = mesh.getVertexAttributes();
+		final float[] meshVertices = getVertices(mesh);
+		final short[] meshIndices = getIndices(mesh);
+		final int offset = renderable.meshPartOffset, size = renderable.meshPartSize;
+
+		final Piece piece = findPiece(pieces, renderable, size);
+		final int stride = attributes.vertexSize / 4;
+		final ShortArray indices = piece.indices;
+		transform.set(toGroup).mul(renderable.worldTransform);
+
+		if (meshIndices.length == 0) {
+			// Not indexed, the part is a run of vertices.
+			for (int i = 0; i < size; i++) {
+				indices.add((short)piece.vertexCount);
+				addVertex(piece, meshVertices, (offset + i) * stride, stride, attributes);
+			}
+			return;
+		}
+		if (remap.length < meshVertices.length / stride) {
+			remap = new int[meshVertices.length / stride];
+			remapStamps = new int[remap.length];
+			stamp = 0;
+		}
+		stamp++;
+		for (int i = offset, n = offset + size; i < n; i++) {
+			final int index = meshIndices[i] & 0xffff;
+			if (remapStamps[index] != stamp) {
+				remapStamps[index] = stamp;
+				remap[index] = piece.vertexCount;
+				addVertex(piece, meshVertices, index * stride, stride, attributes);
+			}
+			indices.add((short)remap[index]);
+		}
+	}
+
+	/** Returns a piece with the material and layout of the renderable with room for the vertices of the part. */
+	private Piece findPiece (Array<Piece> pieces, Renderable renderable, int size) {
+		final int materialId = materialIds.get(renderable.material);
+		final VertexAttributes attributes = renderable.mesh.getVertexAttributes();
+		for (int i = 0; i < pieces.size; i++) {
+			final Piece piece = pieces.get(i);
+			if (piece.materialId == materialId && piece.primitiveType == renderable.primitiveType
+				&& piece.attributes.equals(attributes) && piece.vertexCount + size <= MAX_VERTICES) return piece;
+		}
+		final Piece piece = new Piece(renderable.material, materialId, attributes, renderable.primitiveType);
+		pieces.add(piece);
+		return piece;
+	}
+
+	private void addVertex (Piece piece, float[] source, int start, int stride, VertexAttributes attributes) {
+		final FloatArray vertices = piece.vertices;
+		VertexUtils.transform(source, start, vertices.ensureCapacity(stride), vertices.size, 1, attributes, transform.val);
+		vertices.size += stride;
+		piece.vertexCount++;
+	}
+
+	private float[] getVertices (Mesh mesh) {
+		float[] meshVertices = vertices.get(mesh);
+		if (meshVertices == null) {
+			meshVertices = mesh.getVertices(new float[mesh.getNumVertices() * mesh.getVertexSize() / 4]);
+			vertices.put(mesh, meshVertices);
+		}
+		return meshVertices;
+	}
+
+	private short[] getIndices (Mesh mesh) {
+		short[] meshIndices = indices.get(mesh);
+		if (meshIndices == null) {
+			meshIndices = new short[mesh.getNumIndices()];
+			mesh.getIndices(meshIndices);
+			indices.put(mesh, meshIndices);
+		}
+		return meshIndices;
+	}
+
+	public float getChunkSize () {
+		return chunkSize;
+	}
+
+	/** @param chunkSize The size of the cubic chunks, in the units of the batched group. */
+	public void setChunkSize (float chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	public VertexDataType getVertexDataType () {
+		return vertexDataType;
+	}
+
+	/** Sets how the merged meshes keep their vertices, vertex buffer objects by default. Vertex arrays don't need a GL context. */
+	public void setVertexDataType (VertexDataType vertexDataType) {
+		this.vertexDataType = vertexDataType;
+	}
+
+	/** The merged vertices and indices of one material and vertex layout in a chunk. */
+	static private class Piece {
+		final Material material;
+		final int materialId;
+		final VertexAttributes attributes;
+		final int primitiveType;
+		final FloatArray vertices = new FloatArray();
+		final ShortArray indices = new ShortArray();
+		int vertexCount;
+
+		Piece (Material material, int materialId, VertexAttributes attributes, int primitiveType) {
+			this.material = material;
+			this.materialId = materialId;
+			this.attributes = attributes;
+			this.primitiveType = primitiveType;
+		}
+	}
+}
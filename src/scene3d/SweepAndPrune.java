@@ -0,0 +1,347 @@
+package scene3d;
+
+import scene3d.utils.OrientedBox;
+
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.LongMap;
+import com.badlogic.gdx.utils.LongMap.Entries;
+import com.badlogic.gdx.utils.ObjectIntMap;
+import com.badlogic.gdx.utils.Pool;
+import com.badlogic.gdx.utils.Pools;
+
+/** Finds the actor3ds whose world bounds overlap, and tells them with {@link OverlapEvent3d}s when they start or stop
+ * overlapping.
+ * <p>
+ * The broadphase keeps the ends of every world bounds sorted along each axis. When an actor3d moves, its ends are moved to their
+ * new place by insertion sort, and each time one of them passes an end of another actor3d the pair is tested and added to or
+ * removed from the overlapping pairs. The lists stay sorted between frames, so with coherent motion an update only does a few
+ * swaps per actor3d. The pairs are then tested with the {@link OrientedBox oriented boxes} of both actor3ds by
+ * {@link #fireEvents()}.
+ * <p>
+ * Use {@link Stage3d#enableOverlapEvents()} to have the stage3d keep it up to date and fire the events. */
+public class SweepAndPrune implements SpatialIndex3d {
+	static private final int NULL = -1;
+
+	private final ObjectIntMap<Actor3d> proxies = new ObjectIntMap<Actor3d>();
+	private Actor3d[] actors;
+	/** minX, minY, minZ, maxX, maxY, maxZ per proxy, as of its last update. */
+	private float[] bounds;
+	private final IntArray freeProxies = new IntArray();
+	private int capacity, proxyCount;
+
+	/** The sorted end values per axis. */
+	private final float[][] values = new float[3][];
+	/** The proxy of each end shifted left by one, with the lowest bit set for the maximum end. */
+	private final int[][] ends = new int[3][];
+	/** The index of the minimum and maximum ends of each proxy per axis. */
+	private final int[][] minIndices = new int[3][], maxIndices = new int[3][];
+	private int endCount;
+
+	private final LongMap<Pair> pairs = new LongMap<Pair>();
+	/** The pairs that were overlapping at the last {@link #fireEvents()} and have since been removed from the broadphase. */
+	private final Array<Pair> endedPairs = new Array<Pair>(false, 16);
+	private final Pool<Pair> pairPool = new Pool<Pair>() {
+		protected Pair newObject () {
+			return new Pair();
+		}
+	};
+
+	private final OrientedBox box1 = new OrientedBox(), box2 = new OrientedBox();
+	/** The actor3ds of the pairs to fire events on, two by two, collected first so that listeners may change the stage3d. */
+	private final Array<Actor3d> beginActors = new Array<Actor3d>(false, 16), endActors = new Array<Actor3d>(false, 16);
+
+	public SweepAndPrune () {
+		this(64);
+	}
+
+	public SweepAndPrune (int capacity) {
+		resize(Math.max(capacity, 16));
+	}
+
+	public void update (Actor3d actor3d) {
+		final BoundingBox worldBounds = actor3d.worldBounds;
+		if (Actor3d.isEmpty(worldBounds)) {
+			remove(actor3d);
+			return;
+		}
+		int proxy = proxies.get(actor3d, NULL);
+		if (proxy == NULL) {
+			proxy = addProxy(actor3d);
+			setBounds(proxy, worldBounds);
+			// Enter the sorted lists from the top, as if coming from infinitely far away.
+			for (int axis = 0; axis < 3; axis++) {
+				final float[] values = this.values[axis];
+				final int[] ends = this.ends[axis];
+				values[endCount] = bounds[proxy * 6 + axis];
+				ends[endCount] = proxy << 1;
+				minIndices[axis][proxy] = endCount;
+				values[endCount + 1] = bounds[proxy * 6 + 3 + axis];
+				ends[endCount + 1] = proxy << 1 | 1;
+				maxIndices[axis][proxy] = endCount + 1;
+				sortDown(axis, endCount);
+				sortDown(axis, endCount + 1);
+			}
+			endCount += 2;
+			return;
+		}
+		final int b = proxy * 6;
+		if (bounds[b] == worldBounds.min.x && bounds[b + 1] == worldBounds.min.y && bounds[b + 2] == worldBounds.min.z
+			&& bounds[b + 3] == worldBounds.max.x && bounds[b + 4] == worldBounds.max.y && bounds[b + 5] == worldBounds.max.z) return;
+		setBounds(proxy, worldBounds);
+		for (int axis = 0; axis < 3; axis++) {
+			moveEnd(axis, minIndices[axis][proxy], bounds[b + axis]);
+			moveEnd(axis, maxIndices[axis][proxy], bounds[b + 3 + axis]);
+		}
+	}
+
+	public void remove (Actor3d actor3d) {
+		final int proxy = proxies.remove(actor3d, NULL);
+		if (proxy == NULL) return;
+		// Take the ends out of the lists and move the ends above them down.
+		for (int axis = 0; axis < 3; axis++) {
+			final float[] values = this.values[axis];
+			final int[] ends = this.ends[axis];
+			final int[] minIndices = this.minIndices[axis], maxIndices = this.maxIndices[axis];
+			// Of a flat box the maximum end comes first.
+			int to = Math.min(minIndices[proxy], maxIndices[proxy]);
+			for (int from = to + 1; from < endCount; from++) {
+				final int end = ends[from];
+				if (end >> 1 == proxy) continue;
+				values[to] = values[from];
+				ends[to] = end;
+				if ((end & 1) == 0)
+					minIndices[end >> 1] = to;
+				else
+					maxIndices[end >> 1] = to;
+				to++;
+			}
+		}
+		endCount -= 2;
+		// Drop the pairs of the proxy.
+		final Entries<Pair> entries = pairs.entries();
+		while (entries.hasNext()) {
+			final Pair pair = entries.next().value;
+			if (pair.proxy1 != proxy && pair.proxy2 != proxy) continue;
+			entries.remove();
+			endPair(pair);
+		}
+		actors[proxy] = null;
+		freeProxies.add(proxy);
+		proxyCount--;
+	}
+
+	public void clear () {
+		for (Pair pair : pairs.values())
+			endPair(pair);
+		pairs.clear();
+		proxies.clear();
+		freeProxies.clear();
+		for (int i = 0; i < capacity; i++)
+			actors[i] = null;
+		proxyCount = 0;
+		endCount = 0;
+	}
+
+	/** Returns the number of actor3ds in the broadphase. */
+	public int size () {
+		return proxyCount;
+	}
+
+	/** Returns the number of pairs whose world bounds overlap. */
+	public int getPairCount () {
+		return pairs.size;
+	}
+
+	/** Tests the pairs whose world bounds overlap with their oriented boxes, and fires an {@link OverlapEvent3d} on both actor3ds
+	 * of every pair that started or stopped overlapping since the last call. Pairs that were removed because an actor3d left the
+	 * stage get an end event as well. */
+	public void fireEvents () {
+		final Array<Actor3d> beginActors = this.beginActors, endActors = this.endActors;
+		for (int i = 0; i < endedPairs.size; i++) {
+			final Pair pair = endedPairs.get(i);
+			endActors.add(pair.actor1);
+			endActors.add(pair.actor2);
+			pairPool.free(pair);
+		}
+		endedPairs.clear();
+		for (Pair pair : pairs.values()) {
+			final Actor3d actor1 = pair.actor1, actor2 = pair.actor2;
+			box1.set(actor1.getBounds(), actor1.transform);
+			box2.set(actor2.getBounds(), actor2.transform);
+			final boolean overlapping = box1.overlaps(box2);
+			if (overlapping == pair.overlapping) continue;
+			pair.overlapping = overlapping;
+			final Array<Actor3d> actors = overlapping ? beginActors : endActors;
+			actors.add(actor1);
+			actors.add(actor2);
+		}
+		for (int i = 0; i < endActors.size; i += 2)
+			fire(OverlapEvent3d.Type.end, endActors.get(i), endActors.get(i + 1));
+		endActors.clear();
+		for (int i = 0; i < beginActors.size; i += 2)
+			fire(OverlapEvent3d.Type.begin, beginActors.get(i), beginActors.get(i + 1));
+		beginActors.clear();
+	}
+
+	private void fire (OverlapEvent3d.Type type, Actor3d actor1, Actor3d actor2) {
+		final OverlapEvent3d event = Pools.obtain(OverlapEvent3d.class);
+		event.setType(type);
+		event.setRelatedActor(actor2);
+		actor1.fire(event);
+		event.reset();
+		event.setType(type);
+		event.setRelatedActor(actor1);
+		actor2.fire(event);
+		Pools.free(event);
+	}
+
+	/** Moves the end to its new value and sorts it into place. */
+	private void moveEnd (int axis, int index, float value) {
+		final float old = values[axis][index];
+		values[axis][index] = value;
+		if (value < old)
+			sortDown(axis, index);
+		else if (value > old) sortUp(axis, index);
+	}
+
+	private void sortDown (int axis, int index) {
+		final float[] values = this.values[axis];
+		final int[] ends = this.ends[axis];
+		final float value = values[index];
+		final int end = ends[index];
+		while (index > 0 && before(value, end, values[index - 1], ends[index - 1])) {
+			final int other = ends[index - 1];
+			values[index] = values[index - 1];
+			ends[index] = other;
+			setIndex(axis, other, index);
+			index--;
+			passed(end >> 1, other >> 1);
+		}
+		values[index] = value;
+		ends[index] = end;
+		setIndex(axis, end, index);
+	}
+
+	private void sortUp (int axis, int index) {
+		final float[] values = this.values[axis];
+		final int[] ends = this.ends[axis];
+		final float value = values[index];
+		final int end = ends[index];
+		final int last = endCount - 1;
+		while (index < last && before(values[index + 1], ends[index + 1], value, end)) {
+			final int other = ends[index + 1];
+			values[index] = values[index + 1];
+			ends[index] = other;
+			setIndex(axis, other, index);
+			index++;
+			passed(end >> 1, other >> 1);
+		}
+		values[index] = value;
+		ends[index] = end;
+		setIndex(axis, end, index);
+	}
+
+	/** Returns true if the first end sorts before the second. Of equal values the maximum end comes first, so that touching
+	 * bounds are not overlapping. */
+	static private boolean before (float value1, int end1, float value2, int end2) {
+		return value1 < value2 || (value1 == value2 && (end1 & 1) > (end2 & 1));
+	}
+
+	private void setIndex (int axis, int end, int index) {
+		if ((end & 1) == 0)
+			minIndices[axis][end >> 1] = index;
+		else
+			maxIndices[axis][end >> 1] = index;
+	}
+
+	/** Called when an end of the moving proxy passed an end of the other one. Only then can their overlap change. */
+	private void passed (int proxy, int other) {
+		if (proxy == other) return;
+		final long key = proxy < other ? (long)proxy << 32 | other : (long)other << 32 | proxy;
+		final float[] bounds = this.bounds;
+		final int a = proxy * 6, b = other * 6;
+		final boolean overlapping = bounds[a] < bounds[b + 3] && bounds[b] < bounds[a + 3] && bounds[a + 1] < bounds[b + 4]
+			&& bounds[b + 1] < bounds[a + 4] && bounds[a + 2] < bounds[b + 5] && bounds[b + 2] < bounds[a + 5];
+		if (overlapping) {
+			if (pairs.containsKey(key)) return;
+			final Pair pair = pairPool.obtain();
+			pair.proxy1 = proxy;
+			pair.proxy2 = other;
+			pair.actor1 = actors[proxy];
+			pair.actor2 = actors[other];
+			pair.overlapping = false;
+			pairs.put(key, pair);
+		} else {
+			final Pair pair = pairs.remove(key);
+			if (pair != null) endPair(pair);
+		}
+	}
+
+	/** Keeps the pair for an end event if its actor3ds were overlapping, else frees it. */
+	private void endPair (Pair pair) {
+		if (pair.overlapping)
+			endedPairs.add(pair);
+		else
+			pairPool.free(pair);
+	}
+
+	private void setBounds (int proxy, BoundingBox worldBounds) {
+		final int b = proxy * 6;
+		bounds[b] = worldBounds.min.x;
+		bounds[b + 1] = worldBounds.min.y;
+		bounds[b + 2] = worldBounds.min.z;
+		bounds[b + 3] = worldBounds.max.x;
+		bounds[b + 4] = worldBounds.max.y;
+		bounds[b + 5] = worldBounds.max.z;
+	}
+
+	private int addProxy (Actor3d actor3d) {
+		int proxy;
+		if (freeProxies.size > 0)
+			proxy = freeProxies.pop();
+		else {
+			proxy = proxyCount + freeProxies.size;
+			if (proxy == capacity) resize(capacity * 2);
+		}
+		actors[proxy] = actor3d;
+		proxies.put(actor3d, proxy);
+		proxyCount++;
+		return proxy;
+	}
+
+	private void resize (int newCapacity) {
+		final Actor3d[] newActors = new Actor3d[newCapacity];
+		final float[] newBounds = new float[newCapacity * 6];
+		if (actors != null) {
+			System.arraycopy(actors, 0, newActors, 0, capacity);
+			System.arraycopy(bounds, 0, newBounds, 0, capacity * 6);
+		}
+		actors = newActors;
+		bounds = newBounds;
+		for (int axis = 0; axis < 3; axis++) {
+			final float[] newValues = new float[newCapacity * 2];
+			final int[] newEnds = new int[newCapacity * 2];
+			final int[] newMinIndices = new int[newCapacity], newMaxIndices = new int[newCapacity];
+			if (values[axis] != null) {
+				System.arraycopy(values[axis], 0, newValues, 0, endCount);
+				System.arraycopy(ends[axis], 0, newEnds, 0, endCount);
+				System.arraycopy(minIndices[axis], 0, newMinIndices, 0, capacity);
+				System.arraycopy(maxIndices[axis], 0, newMaxIndices, 0, capacity);
+			}
+			values[axis] = newValues;
+			ends[axis] = newEnds;
+			minIndices[axis] = newMinIndices;
+			maxIndices[axis] = newMaxIndices;
+		}
+		capacity = newCapacity;
+	}
+
+	static private class Pair {
+		int proxy1, proxy2;
+		Actor3d actor1, actor2;
+		/** Whether the oriented boxes overlapped at the last {@link SweepAndPrune#fireEvents()}. */
+		boolean overlapping;
+	}
+}
@@ -0,0 +1,242 @@
+package scene3d;
+
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.SnapshotArray;
+
+/** Structure-of-arrays storage for the transforms of every actor3d in a {@link Stage3d}. Each actor3d in the stage owns a slot and
+ * its position, rotation, scale and world matrix live in contiguous float arrays at that slot, so the world transforms of the
+ * whole stage can be recomputed in one linear, cache friendly pass by {@link #update()} instead of by chasing pointers through the
+ * actor3d hierarchy.
+ * <p>
+ * The slots are visited in a parent first order that is rebuilt only when actor3ds are added to or removed from the stage.
+ * @see Stage3d#enableTransformStore() */
+public class TransformStore {
+	static public final int POSITION_SIZE = 3;
+	static public final int ROTATION_SIZE = 4;
+	static public final int SCALE_SIZE = 3;
+	static public final int MATRIX_SIZE = 16;
+
+	private final Stage3d stage3d;
+
+	/** x, y, z per slot. */
+	public float[] positions;
+	/** Quaternion x, y, z, w per slot. */
+	public float[] rotations;
+	/** x, y, z scale per slot. */
+	public float[] scales;
+	/** Column major world matrix per slot, in the same layout as {@link Matrix4#val}. */
+	public float[] worlds;
+
+	private Actor3d[] actors;
+	private int[] parents;
+	private boolean[] dirty;
+	private boolean[] changed;
+	private int capacity, size;
+	private final IntArray freeSlots = new IntArray();
+
+	private int[] order;
+	private int orderSize;
+	private boolean orderDirty;
+
+	private final float[] local = new float[MATRIX_SIZE];
+
+	public TransformStore (Stage3d stage3d, int capacity) {
+		this.stage3d = stage3d;
+		resize(Math.max(capacity, 16));
+	}
+
+	/** Assigns a slot to the specified actor3d and copies its current transform into it. */
+	void add (Actor3d actor3d) {
+		if (actor3d.transformSlot != -1) return;
+		int slot;
+		if (freeSlots.size > 0)
+			slot = freeSlots.pop();
+		else {
+			if (size == capacity) resize(capacity * 2);
+			slot = size++;
+		}
+		actors[slot] = actor3d;
+		actor3d.transformSlot = slot;
+		setLocal(slot, actor3d);
+		orderDirty = true;
+	}
+
+	/** Releases the slot of the specified actor3d. */
+	void remove (Actor3d actor3d) {
+		int slot = actor3d.transformSlot;
+		if (slot == -1) return;
+		actors[slot] = null;
+		actor3d.transformSlot = -1;
+		freeSlots.add(slot);
+		orderDirty = true;
+	}
+
+	/** Copies the local position, rotation and scale of the actor3d into its slot and marks the slot dirty. */
+	void setLocal (int slot, Actor3d actor3d) {
+		int i = slot * POSITION_SIZE;
+		positions[i] = actor3d.x;
+		positions[i + 1] = actor3d.y;
+		positions[i + 2] = actor3d.z;
+		i = slot * ROTATION_SIZE;
+		rotations[i] = actor3d.rotation.x;
+		rotations[i + 1] = actor3d.rotation.y;
+		rotations[i + 2] = actor3d.rotation.z;
+		rotations[i + 3] = actor3d.rotation.w;
+		i = slot * SCALE_SIZE;
+		scales[i] = actor3d.scaleX;
+		scales[i + 1] = actor3d.scaleY;
+		scales[i + 2] = actor3d.scaleZ;
+		dirty[slot] = true;
+	}
+
+	/** Recomputes the world matrix of every slot whose local transform or ascendant changed since the last update, and copies the
+	 * result to the {@link Actor3d#transform} of its actor3d. */
+	public void update () {
+		if (orderDirty) rebuildOrder();
+		final float[] positions = this.positions, rotations = this.rotations, scales = this.scales, worlds = this.worlds;
+		final float[] local = this.local;
+		final int[] order = this.order, parents = this.parents;
+		final boolean[] dirty = this.dirty, changed = this.changed;
+		for (int i = 0, n = orderSize; i < n; i++) {
+			final int slot = order[i];
+			final int parent = parents[slot];
+			if (!dirty[slot] && (parent == -1 || !changed[parent])) {
+				changed[slot] = false;
+				continue;
+			}
+			final int p = slot * POSITION_SIZE, r = slot * ROTATION_SIZE, s = slot * SCALE_SIZE;
+			setToTranslationRotationScale(local, 0, positions[p], positions[p + 1], positions[p + 2], rotations[r],
+				rotations[r + 1], rotations[r + 2], rotations[r + 3], scales[s], scales[s + 1], scales[s + 2]);
+			if (parent == -1)
+				System.arraycopy(local, 0, worlds, slot * MATRIX_SIZE, MATRIX_SIZE);
+			else
+				mulAffine(worlds, parent * MATRIX_SIZE, local, 0, worlds, slot * MATRIX_SIZE);
+			Actor3d actor3d = actors[slot];
+			System.arraycopy(local, 0, actor3d.localTransform.val, 0, MATRIX_SIZE);
+			System.arraycopy(worlds, slot * MATRIX_SIZE, actor3d.transform.val, 0, MATRIX_SIZE);
+			actor3d.transformValidated();
+			dirty[slot] = false;
+			changed[slot] = true;
+		}
+	}
+
+	/** Lists the occupied slots so that every parent comes before its children. */
+	private void rebuildOrder () {
+		orderSize = 0;
+		Group3d root = stage3d.getRoot();
+		if (root.transformSlot != -1) {
+			parents[root.transformSlot] = -1;
+			order[orderSize++] = root.transformSlot;
+		}
+		addChildren(root);
+		orderDirty = false;
+	}
+
+	private void addChildren (Group3d group3d) {
+		SnapshotArray<Actor3d> children = group3d.getChildren();
+		Actor3d[] actors = children.items;
+		for (int i = 0, n = children.size; i < n; i++) {
+			Actor3d child = actors[i];
+			if (child.transformSlot == -1) continue;
+			parents[child.transformSlot] = group3d.transformSlot;
+			order[orderSize++] = child.transformSlot;
+			if (child instanceof Group3d) addChildren((Group3d)child);
+		}
+	}
+
+	private void resize (int newCapacity) {
+		positions = copy(positions, newCapacity * POSITION_SIZE);
+		rotations = copy(rotations, newCapacity * ROTATION_SIZE);
+		scales = copy(scales, newCapacity * SCALE_SIZE);
+		worlds = copy(worlds, newCapacity * MATRIX_SIZE);
+		Actor3d[] newActors = new Actor3d[newCapacity];
+		int[] newParents = new int[newCapacity], newOrder = new int[newCapacity];
+		boolean[] newDirty = new boolean[newCapacity], newChanged = new boolean[newCapacity];
+		if (actors != null) {
+			System.arraycopy(actors, 0, newActors, 0, size);
+			System.arraycopy(parents, 0, newParents, 0, size);
+			System.arraycopy(order, 0, newOrder, 0, orderSize);
+			System.arraycopy(dirty, 0, newDirty, 0, size);
+			System.arraycopy(changed, 0, newChanged, 0, size);
+		}
+		actors = newActors;
+		parents = newParents;
+		order = newOrder;
+		dirty = newDirty;
+		changed = newChanged;
+		capacity = newCapacity;
+	}
+
+	static private float[] copy (float[] array, int length) {
+		float[] newArray = new float[length];
+		if (array != null) System.arraycopy(array, 0, newArray, 0, Math.min(array.length, length));
+		return newArray;
+	}
+
+	/** Returns the actor3ds that currently own a slot, in no particular order. */
+	public Array<Actor3d> getActors3d (Array<Actor3d> out) {
+		for (int i = 0; i < size; i++)
+			if (actors[i] != null) out.add(actors[i]);
+		return out;
+	}
+
+	/** Returns the number of slots in use. */
+	public int getSize () {
+		return size - freeSlots.size;
+	}
+
+	/** Writes translation * rotation * scale to the column major matrix at the offset, in the same layout as {@link Matrix4#val}.
+	 * This is the same as {@link Matrix4#set(com.badlogic.gdx.math.Vector3, com.badlogic.gdx.math.Quaternion,
+	 * com.badlogic.gdx.math.Vector3)} without the need for vector objects. */
+	static public void setToTranslationRotationScale (float[] val, int offset, float x, float y, float z, float qx, float qy,
+		float qz, float qw, float scaleX, float scaleY, float scaleZ) {
+		final float xs = qx * 2f, ys = qy * 2f, zs = qz * 2f;
+		final float wx = qw * xs, wy = qw * ys, wz = qw * zs;
+		final float xx = qx * xs, xy = qx * ys, xz = qx * zs;
+		final float yy = qy * ys, yz = qy * zs, zz = qz * zs;
+		val[offset + Matrix4.M00] = scaleX * (1f - (yy + zz));
+		val[offset + Matrix4.M01] = scaleY * (xy - wz);
+		val[offset + Matrix4.M02] = scaleZ * (xz + wy);
+		val[offset + Matrix4.M03] = x;
+		val[offset + Matrix4.M10] = scaleX * (xy + wz);
+		val[offset + Matrix4.M11] = scaleY * (1f - (xx + zz));
+		val[offset + Matrix4.M12] = scaleZ * (yz - wx);
+		val[offset + Matrix4.M13] = y;
+		val[offset + Matrix4.M20] = scaleX * (xz - wy);
+		val[offset + Matrix4.M21] = scaleY * (yz + wx);
+		val[offset + Matrix4.M22] = scaleZ * (1f - (xx + yy));
+		val[offset + Matrix4.M23] = z;
+		val[offset + Matrix4.M30] = 0f;
+		val[offset + Matrix4.M31] = 0f;
+		val[offset + Matrix4.M32] = 0f;
+		val[offset + Matrix4.M33] = 1f;
+	}
+
+	/** Multiplies two column major affine matrices, out = a * b. The output may not overlap either input. */
+	static public void mulAffine (float[] a, int ai, float[] b, int bi, float[] out, int oi) {
+		final float a00 = a[ai + Matrix4.M00], a01 = a[ai + Matrix4.M01], a02 = a[ai + Matrix4.M02], a03 = a[ai + Matrix4.M03];
+		final float a10 = a[ai + Matrix4.M10], a11 = a[ai + Matrix4.M11], a12 = a[ai + Matrix4.M12], a13 = a[ai + Matrix4.M13];
+		final float a20 = a[ai + Matrix4.M20], a21 = a[ai + Matrix4.M21], a22 = a[ai + Matrix4.M22], a23 = a[ai + Matrix4.M23];
+		final float b00 = b[bi + Matrix4.M00], b01 = b[bi + Matrix4.M01], b02 = b[bi + Matrix4.M02], b03 = b[bi + Matrix4.M03];
+		final float b10 = b[bi + Matrix4.M10], b11 = b[bi + Matrix4.M11], b12 = b[bi + Matrix4.M12], b13 = b[bi + Matrix4.M13];
+		final float b20 = b[bi + Matrix4.M20], b21 = b[bi + Matrix4.M21], b22 = b[bi + Matrix4.M22], b23 = b[bi + Matrix4.M23];
+		out[oi + Matrix4.M00] = a00 * b00 + a01 * b10 + a02 * b20;
+		out[oi + Matrix4.M01] = a00 * b01 + a01 * b11 + a02 * b21;
+		out[oi + Matrix4.M02] = a00 * b02 + a01 * b12 + a02 * b22;
+		out[oi + Matrix4.M03] = a00 * b03 + a01 * b13 + a02 * b23 + a03;
+		out[oi + Matrix4.M10] = a10 * b00 + a11 * b10 + a12 * b20;
+		out[oi + Matrix4.M11] = a10 * b01 + a11 * b11 + a12 * b21;
+		out[oi + Matrix4.M12] = a10 * b02 + a11 * b12 + a12 * b22;
+		out[oi + Matrix4.M13] = a10 * b03 + a11 * b13 + a12 * b23 + a13;
+		out[oi + Matrix4.M20] = a20 * b00 + a21 * b10 + a22 * b20;
+		out[oi + Matrix4.M21] = a20 * b01 + a21 * b11 + a22 * b21;
+		out[oi + Matrix4.M22] = a20 * b02 + a21 * b12 + a22 * b22;
+		out[oi + Matrix4.M23] = a20 * b03 + a21 * b13 + a22 * b23 + a23;
+		out[oi + Matrix4.M30] = 0f;
+		out[oi + Matrix4.M31] = 0f;
+		out[oi + Matrix4.M32] = 0f;
+		out[oi + Matrix4.M33] = 1f;
+	}
+}
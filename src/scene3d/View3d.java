@@ -0,0 +1,55 @@
+package scene3d;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.math.Frustum;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+
+/** A camera or frustum the stage3d is seen from besides its own camera, eg the second player of a split screen, a minimap or a
+ * light casting shadows. {@link Stage3d#cull(View3d...)} fills the visible actor3ds of several views in one walk of the
+ * hierarchy, and {@link Stage3d#draw(View3d)} draws them as seen by the camera of the view. A drawn view has its own instance and
+ * dynamic batchers when the stage3d batches, so that it doesn't overwrite the batches of the stage3d, dispose of it when it is
+ * no longer drawn. */
+public class View3d implements Disposable {
+	private final Camera camera;
+	private final Frustum frustum;
+	final Array<Actor3d> visible = new Array<Actor3d>(false, 64, Actor3d.class);
+	/** The batchers the view is drawn through, created by the first draw that needs them. */
+	InstanceBatcher instanceBatcher;
+	DynamicBatcher dynamicBatcher;
+
+	/** A view culled with the frustum of the camera, which is updated before each cull, and drawn as seen by it. */
+	public View3d (Camera camera) {
+		this.camera = camera;
+		this.frustum = camera.frustum;
+	}
+
+	/** A view that is only culled, eg with the frustum of a shadow casting light. The frustum must be up to date before each
+	 * cull. */
+	public View3d (Frustum frustum) {
+		this.camera = null;
+		this.frustum = frustum;
+	}
+
+	/** @return May be null if the view was created with a frustum. */
+	public Camera getCamera () {
+		return camera;
+	}
+
+	public Frustum getFrustum () {
+		return frustum;
+	}
+
+	/** Returns the actor3ds found in the frustum by the last {@link Stage3d#cull(View3d...)}. Groups are not listed, only the
+	 * actor3ds below them. */
+	public Array<Actor3d> getVisible () {
+		return visible;
+	}
+
+	/** Disposes of the meshes merged by the dynamic batcher of the view. */
+	public void dispose () {
+		if (dynamicBatcher != null) dynamicBatcher.dispose();
+		dynamicBatcher = null;
+		instanceBatcher = null;
+	}
+}
@@ -0,0 +1,121 @@
+package scene3d.demo;
+
+import java.util.concurrent.ForkJoinPool;
+
+import scene3d.Actor3d;
+import scene3d.SphereCuller;
+
+import com.badlogic.gdx.graphics.GL10;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.PerspectiveCamera;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.g3d.Material;
+import com.badlogic.gdx.graphics.g3d.Model;
+import com.badlogic.gdx.graphics.g3d.model.MeshPart;
+import com.badlogic.gdx.graphics.g3d.model.Node;
+import com.badlogic.gdx.graphics.g3d.model.NodePart;
+import com.badlogic.gdx.math.Frustum;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+
+/** Times frustum culling one actor3d at a time, as {@link scene3d.Group3d} does, against the batched {@link SphereCuller} on one
+ * thread and on a fork-join pool, without a GL context. Arguments: the number of actor3ds and the number of frames. */
+public class CullingBenchmark {
+	public static void main (String[] args) {
+		GdxNativesLoader.load();
+		final int actorCount = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		final int frames = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+		final Model model = createModel(new Material());
+		final Array<Actor3d> actors = new Array<Actor3d>(actorCount);
+		for (int i = 0; i < actorCount; i++) {
+			final Actor3d actor3d = new Actor3d(model);
+			actor3d.setPosition(MathUtils.random(-500f, 500f), MathUtils.random(-50f, 50f), MathUtils.random(-500f, 500f));
+			actor3d.validateTransform();
+			actors.add(actor3d);
+		}
+		final PerspectiveCamera camera = new PerspectiveCamera(67, 800, 480);
+		camera.near = 0.1f;
+		camera.far = 300;
+
+		final SphereCuller culler = new SphereCuller(actorCount);
+		for (int i = 0; i < actorCount; i++)
+			culler.add(actors.get(i));
+		final ForkJoinPool pool = new ForkJoinPool();
+
+		final long[] sphere = new long[2], box = new long[2], batched = new long[2], parallel = new long[2];
+		int sphereVisible = 0, boxVisible = 0;
+		for (int frame = 0; frame < frames; frame++) {
+			// Turn around the origin so the visible part of the field changes every frame.
+			camera.position.set(0, 0, 0);
+			camera.direction.set(MathUtils.cosDeg(frame * 3), 0, MathUtils.sinDeg(frame * 3));
+			camera.update();
+			final Frustum frustum = camera.frustum;
+
+			long start = System.nanoTime();
+			sphereVisible = 0;
+			for (int i = 0; i < actorCount; i++) {
+				final Actor3d actor3d = actors.get(i);
+				if (frustum.sphereInFrustum(actor3d.worldCenter, actor3d.getWorldRadius())) sphereVisible++;
+			}
+			record(sphere, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			boxVisible = 0;
+			for (int i = 0; i < actorCount; i++)
+				if (actors.get(i).isCullable(frustum)) boxVisible++;
+			record(box, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			culler.cull(frustum);
+			record(batched, System.nanoTime() - start);
+			if (culler.getVisibleCount() != sphereVisible)
+				throw new IllegalStateException("Batched: " + culler.getVisibleCount() + " visible, per actor3d: " + sphereVisible);
+
+			start = System.nanoTime();
+			culler.cull(frustum, pool);
+			record(parallel, System.nanoTime() - start);
+			if (culler.getVisibleCount() != sphereVisible)
+				throw new IllegalStateException("Parallel: " + culler.getVisibleCount() + " visible, per actor3d: " + sphereVisible);
+		}
+		pool.shutdown();
+
+		System.out.println(actorCount + " actor3ds, " + sphereVisible + " visible spheres, " + boxVisible + " visible boxes, "
+			+ pool.getParallelism() + " threads");
+		print("per actor3d sphere", sphere, frames);
+		print("per actor3d sphere and box", box, frames);
+		print("batched", batched, frames);
+		print("batched parallel", parallel, frames);
+	}
+
+	/** Keeps the best time in the first element and the total in the second. */
+	static private void record (long[] times, long time) {
+		times[0] = times[0] == 0 ? time : Math.min(times[0], time);
+		times[1] += time;
+	}
+
+	static private void print (String name, long[] times, int frames) {
+		System.out.println(name + ": " + times[0] / 1000 + " us best, " + times[1] / frames / 1000 + " us average");
+	}
+
+	/** A model with a single triangle in a vertex array, which doesn't need a GL context. */
+	static private Model createModel (Material material) {
+		final Mesh mesh = new Mesh(Mesh.VertexDataType.VertexArray, true, 3, 0, VertexAttribute.Position());
+		mesh.setVertices(new float[] {0, 0, 0, 1, 0, 0, 0, 1, 0});
+		final MeshPart meshPart = new MeshPart();
+		meshPart.mesh = mesh;
+		meshPart.numVertices = 3;
+		meshPart.primitiveType = GL10.GL_TRIANGLES;
+		final NodePart nodePart = new NodePart();
+		nodePart.meshPart = meshPart;
+		nodePart.material = material;
+		final Node node = new Node();
+		node.parts.add(nodePart);
+		final Model model = new Model();
+		model.nodes.add(node);
+		model.materials.add(material);
+		model.meshes.add(mesh);
+		return model;
+	}
+}
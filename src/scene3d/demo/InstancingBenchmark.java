@@ -0,0 +1,78 @@
+package scene3d.demo;
+
+import scene3d.Actor3d;
+import scene3d.InstanceBatch;
+import scene3d.InstanceBatcher;
+
+import com.badlogic.gdx.graphics.GL10;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.g3d.Material;
+import com.badlogic.gdx.graphics.g3d.Model;
+import com.badlogic.gdx.graphics.g3d.attributes.ColorAttribute;
+import com.badlogic.gdx.graphics.g3d.model.MeshPart;
+import com.badlogic.gdx.graphics.g3d.model.Node;
+import com.badlogic.gdx.graphics.g3d.model.NodePart;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+
+/** Times how long the {@link InstanceBatcher} takes to group the actor3ds and pack their transforms, without a GL context.
+ * Arguments: the number of actor3ds, the number of models and the number of frames. */
+public class InstancingBenchmark {
+	public static void main (String[] args) {
+		GdxNativesLoader.load();
+		final int actorCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		final int modelCount = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		final int frames = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+		final Model[] models = new Model[modelCount];
+		for (int i = 0; i < modelCount; i++)
+			models[i] = createModel(new Material(ColorAttribute.createDiffuse(i / (float)modelCount, 0.5f, 0.5f, 1f)));
+		final Array<Actor3d> actors = new Array<Actor3d>(actorCount);
+		for (int i = 0; i < actorCount; i++) {
+			final Actor3d actor3d = new Actor3d(models[i % modelCount]);
+			actor3d.setPosition(MathUtils.random(-100f, 100f), MathUtils.random(-100f, 100f), MathUtils.random(-100f, 100f));
+			actor3d.validateTransform();
+			actors.add(actor3d);
+		}
+
+		final InstanceBatcher batcher = new InstanceBatcher();
+		long best = Long.MAX_VALUE, total = 0;
+		for (int frame = 0; frame < frames; frame++) {
+			final long start = System.nanoTime();
+			batcher.begin();
+			for (int i = 0; i < actorCount; i++)
+				batcher.add(actors.get(i), null);
+			batcher.end();
+			final long time = System.nanoTime() - start;
+			best = Math.min(best, time);
+			total += time;
+		}
+		int instances = 0;
+		for (InstanceBatch batch : batcher.getBatches())
+			instances += batch.getCount();
+		System.out.println(actorCount + " actor3ds, " + batcher.getBatches().size + " batches, " + instances + " instances");
+		System.out.println("group and pack: " + best / 1000 + " us best, " + total / frames / 1000 + " us average");
+	}
+
+	/** A model with a single triangle in a vertex array, which doesn't need a GL context. */
+	static private Model createModel (Material material) {
+		final Mesh mesh = new Mesh(Mesh.VertexDataType.VertexArray, true, 3, 0, VertexAttribute.Position());
+		mesh.setVertices(new float[] {0, 0, 0, 1, 0, 0, 0, 1, 0});
+		final MeshPart meshPart = new MeshPart();
+		meshPart.mesh = mesh;
+		meshPart.numVertices = 3;
+		meshPart.primitiveType = GL10.GL_TRIANGLES;
+		final NodePart nodePart = new NodePart();
+		nodePart.meshPart = meshPart;
+		nodePart.material = material;
+		final Node node = new Node();
+		node.parts.add(nodePart);
+		final Model model = new Model();
+		model.nodes.add(node);
+		model.materials.add(material);
+		model.meshes.add(mesh);
+		return model;
+	}
+}
@@ -0,0 +1,38 @@
+package scene3d.utils;
+
+import scene3d.RenderSink;
+
+import com.badlogic.gdx.graphics.g3d.Material;
+import com.badlogic.gdx.graphics.g3d.Renderable;
+import com.badlogic.gdx.graphics.g3d.Shader;
+
+/** A {@link RenderSink} that draws nothing and only counts how often the shader and the material change between consecutive
+ * renderables, the state changes a real batch would have to make. It doesn't need a GL context. */
+public class CountingRenderSink implements RenderSink {
+	public int renderables, shaderChanges, materialChanges;
+	private Shader shader;
+	private Material material;
+	private boolean first = true;
+
+	public void render (Renderable renderable) {
+		renderables++;
+		if (first || renderable.shader != shader) shaderChanges++;
+		// Like the default shader, equal materials don't need their state to be bound again.
+		if (first || (renderable.material != material && (material == null || !material.equals(renderable.material))))
+			materialChanges++;
+		shader = renderable.shader;
+		material = renderable.material;
+		first = false;
+	}
+
+	public void reset () {
+		renderables = shaderChanges = materialChanges = 0;
+		shader = null;
+		material = null;
+		first = true;
+	}
+
+	public String toString () {
+		return renderables + " renderables, " + shaderChanges + " shader changes, " + materialChanges + " material changes";
+	}
+}
@@ -0,0 +1,53 @@
+package scene3d.utils;
+
+import com.badlogic.gdx.math.Frustum;
+import com.badlogic.gdx.math.Plane;
+import com.badlogic.gdx.math.collision.BoundingBox;
+
+/** Frustum tests that, unlike the ones in {@link Frustum}, tell a volume that is fully inside apart from one that only
+ * intersects the frustum. Hierarchical culling uses this to skip the tests of everything below a fully visible node. */
+public class FrustumUtils {
+	/** The volume is completely outside of the frustum. */
+	static public final int OUTSIDE = 0;
+	/** The volume crosses at least one plane of the frustum. */
+	static public final int INTERSECTING = 1;
+	/** The volume is completely inside of the frustum. */
+	static public final int INSIDE = 2;
+
+	/** Classifies the axis aligned box against the frustum.
+	 * @return {@link #OUTSIDE}, {@link #INTERSECTING} or {@link #INSIDE} */
+	static public int classify (Frustum frustum, BoundingBox box) {
+		return classify(frustum, box.min.x, box.min.y, box.min.z, box.max.x, box.max.y, box.max.z);
+	}
+
+	/** Classifies the axis aligned box given by its corners against the frustum.
+	 * @return {@link #OUTSIDE}, {@link #INTERSECTING} or {@link #INSIDE} */
+	static public int classify (Frustum frustum, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		final Plane[] planes = frustum.planes;
+		int result = INSIDE;
+		for (int i = 0, n = planes.length; i < n; i++) {
+			final Plane plane = planes[i];
+			final float nx = plane.normal.x, ny = plane.normal.y, nz = plane.normal.z;
+			// The corner farthest along the plane normal decides whether the box is outside, the nearest whether it is inside.
+			final float far = nx * (nx > 0 ? maxX : minX) + ny * (ny > 0 ? maxY : minY) + nz * (nz > 0 ? maxZ : minZ) + plane.d;
+			if (far < 0) return OUTSIDE;
+			final float near = nx * (nx > 0 ? minX : maxX) + ny * (ny > 0 ? minY : maxY) + nz * (nz > 0 ? minZ : maxZ) + plane.d;
+			if (near < 0) result = INTERSECTING;
+		}
+		return result;
+	}
+
+	/** Classifies the sphere against the frustum.
+	 * @return {@link #OUTSIDE}, {@link #INTERSECTING} or {@link #INSIDE} */
+	static public int classify (Frustum frustum, float x, float y, float z, float radius) {
+		final Plane[] planes = frustum.planes;
+		int result = INSIDE;
+		for (int i = 0, n = planes.length; i < n; i++) {
+			final Plane plane = planes[i];
+			final float distance = plane.normal.x * x + plane.normal.y * y + plane.normal.z * z + plane.d;
+			if (distance < -radius) return OUTSIDE;
+			if (distance < radius) result = INTERSECTING;
+		}
+		return result;
+	}
+}
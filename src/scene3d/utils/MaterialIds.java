@@ -0,0 +1,56 @@
+package scene3d.utils;
+
+import java.util.WeakHashMap;
+
+import com.badlogic.gdx.graphics.g3d.Material;
+import com.badlogic.gdx.utils.Array;
+
+/** Gives equal materials the same int id, so that renderables can be grouped by material without comparing their attributes
+ * every time. Each model instance has its own copies of the materials of its model, which are equal but not the same. Ids start
+ * at 1 in the order the materials are first seen, 0 is for no material. The materials are only weakly referenced, so that the
+ * ones of removed actor3ds can be collected. */
+public class MaterialIds {
+	/** The ids by material, with weak keys. A material hashes by identity, and its equals, which compares all its attributes,
+	 * only matches materials that would get the same id anyway. */
+	private final WeakHashMap<Material, Integer> ids = new WeakHashMap<Material, Integer>();
+	/** A copy of each distinct material as it was first seen, at the index of its id minus 1. */
+	private final Array<Material> distinct = new Array<Material>(false, 16, Material.class);
+
+	/** Returns the id of the material. Materials changed after they were first seen keep their id until {@link #clear()}. */
+	public int get (Material material) {
+		if (material == null) return 0;
+		Integer id = ids.get(material);
+		if (id == null) {
+			// Only done once per material instance.
+			final Material[] items = distinct.items;
+			for (int i = 0, n = distinct.size; i < n; i++) {
+				if (items[i].equals(material)) {
+					id = i + 1;
+					break;
+				}
+			}
+			if (id == null) {
+				distinct.add(material.copy());
+				id = distinct.size;
+			}
+			ids.put(material, id);
+		}
+		return id;
+	}
+
+	/** Returns the number of material instances that have an id and were not collected. */
+	public int size () {
+		return ids.size();
+	}
+
+	/** Returns the number of distinct materials seen, which is the highest id given. */
+	public int getIdCount () {
+		return distinct.size;
+	}
+
+	/** Forgets all ids and starts them over from 1, eg before they run out. */
+	public void clear () {
+		ids.clear();
+		distinct.clear();
+	}
+}
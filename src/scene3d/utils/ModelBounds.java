@@ -0,0 +1,357 @@
+package scene3d.utils;
+
+import com.badlogic.gdx.graphics.GL10;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes.Usage;
+import com.badlogic.gdx.graphics.g3d.Model;
+import com.badlogic.gdx.graphics.g3d.model.MeshPart;
+import com.badlogic.gdx.graphics.g3d.model.Node;
+import com.badlogic.gdx.graphics.g3d.model.NodePart;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.ObjectMap;
+
+/** The bounding volumes of a {@link Model} in model space: an axis aligned box, a near minimal sphere and an oriented box. They
+ * are computed from the vertices of the model once by {@link #get(Model)} and then shared by every actor3d created from that
+ * model, so they must be treated as read only.
+ * <p>
+ * The sphere is found with Ritter's algorithm followed by a few shrink and regrow passes, which usually lands within a few
+ * percent of the minimal sphere. The oriented box is aligned with the principal axes of the vertices, or with the model axes when
+ * that gives a smaller box. */
+public class ModelBounds {
+	static private final ObjectMap<Model, ModelBounds> cache = new ObjectMap<Model, ModelBounds>();
+	/** Shared by all models without vertices, so that the empty models of groups are not cached one by one. */
+	static public final ModelBounds EMPTY = new ModelBounds();
+
+	static private final int REFINE_ITERATIONS = 8;
+	static private final float SHRINK = 0.95f;
+
+	/** The axis aligned box of the vertices. */
+	public final BoundingBox box = new BoundingBox();
+	/** The center of the bounding sphere. */
+	public final Vector3 center = new Vector3();
+	/** The radius of the bounding sphere. */
+	public float radius;
+	/** The center of the oriented box. */
+	public final Vector3 boxCenter = new Vector3();
+	/** The unit axes of the oriented box. */
+	public final Vector3[] axes = {new Vector3(1, 0, 0), new Vector3(0, 1, 0), new Vector3(0, 0, 1)};
+	/** The half extents of the oriented box along each of its {@link #axes}. */
+	public final Vector3 halfExtents = new Vector3();
+
+	private ModelBounds () {
+		box.inf();
+	}
+
+	/** Computes the bounds of the vertices of the model, without caching them. */
+	public ModelBounds (Model model) {
+		this();
+		FloatArray points = getPositions(model, false);
+		set(points.items, points.size / 3);
+	}
+
+	/** Uses the box as the bounds, with the sphere around it. */
+	public ModelBounds (BoundingBox box) {
+		this();
+		this.box.set(box);
+		if (isEmpty()) return;
+		center.set(box.getCenter());
+		boxCenter.set(center);
+		halfExtents.set(box.getDimensions()).scl(0.5f);
+		radius = halfExtents.len();
+	}
+
+	/** Returns the bounds of the model, computing them the first time the model is seen. */
+	static public ModelBounds get (Model model) {
+		synchronized (cache) {
+			ModelBounds bounds = cache.get(model);
+			if (bounds == null) {
+				bounds = new ModelBounds(model);
+				if (bounds.isEmpty())
+					bounds = EMPTY;
+				else
+					cache.put(model, bounds);
+			}
+			return bounds;
+		}
+	}
+
+	/** Forgets the bounds of the model, eg when it is disposed or its meshes were changed. */
+	static public void remove (Model model) {
+		synchronized (cache) {
+			cache.remove(model);
+		}
+	}
+
+	static public void clear () {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	/** Returns true if there are no vertices inside these bounds. */
+	public boolean isEmpty () {
+		return box.min.x > box.max.x || box.min.y > box.max.y || box.min.z > box.max.z;
+	}
+
+	/** Returns the positions, as x, y, z triples in model space, of every vertex drawn by the model in the order they are drawn.
+	 * @param trianglesOnly If true only the parts drawn as triangles are included, so that each nine floats are a triangle. */
+	static FloatArray getPositions (Model model, boolean trianglesOnly) {
+		FloatArray positions = new FloatArray();
+		ObjectMap<Mesh, float[]> vertices = new ObjectMap<Mesh, float[]>();
+		ObjectMap<Mesh, short[]> indices = new ObjectMap<Mesh, short[]>();
+		for (int i = 0; i < model.nodes.size; i++)
+			addPositions(model.nodes.get(i), positions, trianglesOnly, vertices, indices);
+		return positions;
+	}
+
+	/** Appends the positions of every vertex drawn by the node and its children, transformed to model space. */
+	static private void addPositions (Node node, FloatArray out, boolean trianglesOnly, ObjectMap<Mesh, float[]> vertices,
+		ObjectMap<Mesh, short[]> indices) {
+		final float[] m = node.globalTransform.val;
+		for (int i = 0; i < node.parts.size; i++) {
+			NodePart nodePart = node.parts.get(i);
+			MeshPart meshPart = nodePart.meshPart;
+			if (meshPart == null || meshPart.mesh == null) continue;
+			if (trianglesOnly && meshPart.primitiveType != GL10.GL_TRIANGLES) continue;
+			final Mesh mesh = meshPart.mesh;
+			final VertexAttribute position = mesh.getVertexAttribute(Usage.Position);
+			if (position == null) continue;
+			float[] verts = vertices.get(mesh);
+			if (verts == null) {
+				verts = mesh.getVertices(new float[mesh.getNumVertices() * mesh.getVertexSize() / 4]);
+				vertices.put(mesh, verts);
+			}
+			short[] idx = null;
+			if (mesh.getNumIndices() > 0) {
+				idx = indices.get(mesh);
+				if (idx == null) {
+					idx = new short[mesh.getNumIndices()];
+					mesh.getIndices(idx);
+					indices.put(mesh, idx);
+				}
+			}
+			final int stride = mesh.getVertexSize() / 4, offset = position.offset / 4, components = position.numComponents;
+			out.ensureCapacity(meshPart.numVertices * 3);
+			for (int j = meshPart.indexOffset, n = j + meshPart.numVertices; j < n; j++) {
+				final int v = (idx != null ? idx[j] & 0xFFFF : j) * stride + offset;
+				final float x = verts[v], y = components > 1 ? verts[v + 1] : 0f, z = components > 2 ? verts[v + 2] : 0f;
+				out.add(m[Matrix4.M00] * x + m[Matrix4.M01] * y + m[Matrix4.M02] * z + m[Matrix4.M03]);
+				out.add(m[Matrix4.M10] * x + m[Matrix4.M11] * y + m[Matrix4.M12] * z + m[Matrix4.M13]);
+				out.add(m[Matrix4.M20] * x + m[Matrix4.M21] * y + m[Matrix4.M22] * z + m[Matrix4.M23]);
+			}
+		}
+		Array<Node> children = node.children;
+		for (int i = 0; i < children.size; i++)
+			addPositions(children.get(i), out, trianglesOnly, vertices, indices);
+	}
+
+	/** Computes all bounds from the points, given as x, y, z triples. The order of the points is changed. */
+	private void set (float[] points, int count) {
+		box.inf();
+		if (count == 0) return;
+		final Vector3 min = new Vector3(Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE);
+		final Vector3 max = new Vector3(-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE);
+		for (int i = 0; i < count * 3; i += 3) {
+			min.set(Math.min(min.x, points[i]), Math.min(min.y, points[i + 1]), Math.min(min.z, points[i + 2]));
+			max.set(Math.max(max.x, points[i]), Math.max(max.y, points[i + 1]), Math.max(max.z, points[i + 2]));
+		}
+		box.set(min, max);
+		computeBox(points, count);
+		computeSphere(points, count);
+		// The sphere around the oriented box occasionally beats the iterative one, eg for boxes.
+		final float boxRadius = halfExtents.len();
+		if (boxRadius < radius) {
+			center.set(boxCenter);
+			radius = boxRadius;
+		}
+	}
+
+	/** Fits the oriented box to the eigenvectors of the covariance of the points, and falls back to the axis aligned box when
+	 * that one is smaller. */
+	private void computeBox (float[] points, int count) {
+		double mx = 0, my = 0, mz = 0;
+		for (int i = 0; i < count * 3; i += 3) {
+			mx += points[i];
+			my += points[i + 1];
+			mz += points[i + 2];
+		}
+		mx /= count;
+		my /= count;
+		mz /= count;
+		final double[] a = new double[9];
+		for (int i = 0; i < count * 3; i += 3) {
+			final double x = points[i] - mx, y = points[i + 1] - my, z = points[i + 2] - mz;
+			a[0] += x * x;
+			a[1] += x * y;
+			a[2] += x * z;
+			a[4] += y * y;
+			a[5] += y * z;
+			a[8] += z * z;
+		}
+		a[3] = a[1];
+		a[6] = a[2];
+		a[7] = a[5];
+		final double[] v = new double[9];
+		jacobi(a, v);
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+		final float ax = (float)v[0], ay = (float)v[3], az = (float)v[6];
+		final float bx = (float)v[1], by = (float)v[4], bz = (float)v[7];
+		final float cx = (float)v[2], cy = (float)v[5], cz = (float)v[8];
+		for (int i = 0; i < count * 3; i += 3) {
+			final float x = points[i], y = points[i + 1], z = points[i + 2];
+			final float u = ax * x + ay * y + az * z, s = bx * x + by * y + bz * z, t = cx * x + cy * y + cz * z;
+			minX = Math.min(minX, u);
+			maxX = Math.max(maxX, u);
+			minY = Math.min(minY, s);
+			maxY = Math.max(maxY, s);
+			minZ = Math.min(minZ, t);
+			maxZ = Math.max(maxZ, t);
+		}
+		final float hx = (maxX - minX) / 2f, hy = (maxY - minY) / 2f, hz = (maxZ - minZ) / 2f;
+		final Vector3 dimensions = box.getDimensions();
+		final float ex = dimensions.x / 2f, ey = dimensions.y / 2f, ez = dimensions.z / 2f;
+		// Compare the surface rather than the volume, so that flat models also get the better box.
+		if (hx * hy + hy * hz + hz * hx < ex * ey + ey * ez + ez * ex) {
+			axes[0].set(ax, ay, az);
+			axes[1].set(bx, by, bz);
+			axes[2].set(cx, cy, cz);
+			halfExtents.set(hx, hy, hz);
+			final float u = (minX + maxX) / 2f, s = (minY + maxY) / 2f, t = (minZ + maxZ) / 2f;
+			boxCenter.set(ax * u + bx * s + cx * t, ay * u + by * s + cy * t, az * u + bz * s + cz * t);
+		} else {
+			axes[0].set(1, 0, 0);
+			axes[1].set(0, 1, 0);
+			axes[2].set(0, 0, 1);
+			halfExtents.set(ex, ey, ez);
+			boxCenter.set(box.getCenter());
+		}
+	}
+
+	/** Diagonalizes the symmetric 3x3 row major matrix a with Jacobi rotations. On return the columns of v hold its eigenvectors. */
+	static private void jacobi (double[] a, double[] v) {
+		v[0] = v[4] = v[8] = 1;
+		double previousOff = Double.MAX_VALUE;
+		for (int iteration = 0; iteration < 50; iteration++) {
+			// Zero the largest off diagonal element.
+			int p = 0, q = 1;
+			if (Math.abs(a[2]) > Math.abs(a[p * 3 + q])) q = 2;
+			if (Math.abs(a[5]) > Math.abs(a[p * 3 + q])) {
+				p = 1;
+				q = 2;
+			}
+			final double apq = a[p * 3 + q];
+			double c = 1, s = 0;
+			if (Math.abs(apq) > 1e-12) {
+				final double r = (a[q * 3 + q] - a[p * 3 + p]) / (2 * apq);
+				final double t = r >= 0 ? 1 / (r + Math.sqrt(1 + r * r)) : -1 / (-r + Math.sqrt(1 + r * r));
+				c = 1 / Math.sqrt(1 + t * t);
+				s = t * c;
+			}
+			// a = J^T * a * J and v = v * J, where J is the rotation in the p, q plane.
+			for (int k = 0; k < 3; k++) {
+				final double akp = a[k * 3 + p], akq = a[k * 3 + q];
+				a[k * 3 + p] = c * akp - s * akq;
+				a[k * 3 + q] = s * akp + c * akq;
+				final double vkp = v[k * 3 + p], vkq = v[k * 3 + q];
+				v[k * 3 + p] = c * vkp - s * vkq;
+				v[k * 3 + q] = s * vkp + c * vkq;
+			}
+			for (int k = 0; k < 3; k++) {
+				final double apk = a[p * 3 + k], aqk = a[q * 3 + k];
+				a[p * 3 + k] = c * apk - s * aqk;
+				a[q * 3 + k] = s * apk + c * aqk;
+			}
+			final double off = a[1] * a[1] + a[2] * a[2] + a[5] * a[5];
+			if (off < 1e-24 || (iteration > 2 && off >= previousOff)) break;
+			previousOff = off;
+		}
+	}
+
+	/** Ritter's sphere, then repeatedly shrinks it and grows it back over the points in a shuffled order, keeping the smallest. */
+	private void computeSphere (float[] points, int count) {
+		// Start from the most distant pair among the extreme points along each axis.
+		int minX = 0, maxX = 0, minY = 0, maxY = 0, minZ = 0, maxZ = 0;
+		for (int i = 1; i < count; i++) {
+			final int p = i * 3;
+			if (points[p] < points[minX * 3]) minX = i;
+			if (points[p] > points[maxX * 3]) maxX = i;
+			if (points[p + 1] < points[minY * 3 + 1]) minY = i;
+			if (points[p + 1] > points[maxY * 3 + 1]) maxY = i;
+			if (points[p + 2] < points[minZ * 3 + 2]) minZ = i;
+			if (points[p + 2] > points[maxZ * 3 + 2]) maxZ = i;
+		}
+		int a = minX, b = maxX;
+		if (distance2(points, minY, maxY) > distance2(points, a, b)) {
+			a = minY;
+			b = maxY;
+		}
+		if (distance2(points, minZ, maxZ) > distance2(points, a, b)) {
+			a = minZ;
+			b = maxZ;
+		}
+		final float[] sphere = new float[4];
+		sphere[0] = (points[a * 3] + points[b * 3]) / 2f;
+		sphere[1] = (points[a * 3 + 1] + points[b * 3 + 1]) / 2f;
+		sphere[2] = (points[a * 3 + 2] + points[b * 3 + 2]) / 2f;
+		sphere[3] = (float)Math.sqrt(distance2(points, a, b)) / 2f;
+		for (int i = 0; i < count; i++)
+			grow(sphere, points, i);
+		center.set(sphere[0], sphere[1], sphere[2]);
+		radius = sphere[3];
+
+		long seed = 0x2545F4914F6CDD1DL;
+		for (int iteration = 0; iteration < REFINE_ITERATIONS; iteration++) {
+			sphere[3] *= SHRINK;
+			for (int i = 0; i < count; i++) {
+				seed ^= seed << 13;
+				seed ^= seed >>> 7;
+				seed ^= seed << 17;
+				final int j = i + (int)((seed >>> 33) % (count - i));
+				swap(points, i, j);
+				grow(sphere, points, i);
+			}
+			if (sphere[3] < radius) {
+				center.set(sphere[0], sphere[1], sphere[2]);
+				radius = sphere[3];
+			}
+		}
+		// Rounding in the growth steps may leave points a hair outside.
+		float radius2 = radius * radius;
+		for (int i = 0; i < count * 3; i += 3)
+			radius2 = Math.max(radius2, Vector3.dst2(points[i], points[i + 1], points[i + 2], center.x, center.y, center.z));
+		radius = (float)Math.sqrt(radius2);
+	}
+
+	/** Grows the sphere, given as x, y, z and radius, just enough to contain the point. */
+	static private void grow (float[] sphere, float[] points, int index) {
+		final int p = index * 3;
+		final float dx = points[p] - sphere[0], dy = points[p + 1] - sphere[1], dz = points[p + 2] - sphere[2];
+		final float distance2 = dx * dx + dy * dy + dz * dz;
+		if (distance2 <= sphere[3] * sphere[3]) return;
+		final float distance = (float)Math.sqrt(distance2);
+		final float newRadius = (sphere[3] + distance) / 2f;
+		final float k = (newRadius - sphere[3]) / distance;
+		sphere[0] += dx * k;
+		sphere[1] += dy * k;
+		sphere[2] += dz * k;
+		sphere[3] = newRadius;
+	}
+
+	static private float distance2 (float[] points, int a, int b) {
+		return Vector3.dst2(points[a * 3], points[a * 3 + 1], points[a * 3 + 2], points[b * 3], points[b * 3 + 1], points[b * 3 + 2]);
+	}
+
+	static private void swap (float[] points, int a, int b) {
+		for (int k = 0; k < 3; k++) {
+			final float t = points[a * 3 + k];
+			points[a * 3 + k] = points[b * 3 + k];
+			points[b * 3 + k] = t;
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package scene3d.utils;
+
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Vector3;
+
+/** A box with its own axes, for tighter overlap tests than with axis aligned boxes. */
+public class OrientedBox {
+	static private final float EPSILON = 1e-6f;
+
+	public final Vector3 center = new Vector3();
+	/** The unit axes of the box. */
+	public final Vector3[] axes = {new Vector3(1, 0, 0), new Vector3(0, 1, 0), new Vector3(0, 0, 1)};
+	/** The half extents along each of the {@link #axes}. */
+	public final Vector3 halfExtents = new Vector3();
+
+	/** Sets this box to the oriented box of the bounds, moved into world space by the transform. A non uniform scale of a box
+	 * that is rotated in model space makes the axes slightly skewed, which only loosens the test. */
+	public OrientedBox set (ModelBounds bounds, Matrix4 transform) {
+		final float[] m = transform.val;
+		final Vector3 c = bounds.boxCenter;
+		center.set(c).mul(transform);
+		for (int i = 0; i < 3; i++) {
+			final Vector3 a = bounds.axes[i];
+			final Vector3 axis = axes[i].set(m[Matrix4.M00] * a.x + m[Matrix4.M01] * a.y + m[Matrix4.M02] * a.z,
+				m[Matrix4.M10] * a.x + m[Matrix4.M11] * a.y + m[Matrix4.M12] * a.z,
+				m[Matrix4.M20] * a.x + m[Matrix4.M21] * a.y + m[Matrix4.M22] * a.z);
+			final float length = axis.len();
+			if (length > 0) axis.scl(1f / length);
+			final float half = i == 0 ? bounds.halfExtents.x : (i == 1 ? bounds.halfExtents.y : bounds.halfExtents.z);
+			if (i == 0)
+				halfExtents.x = half * length;
+			else if (i == 1)
+				halfExtents.y = half * length;
+			else
+				halfExtents.z = half * length;
+		}
+		return this;
+	}
+
+	/** Returns true if the boxes overlap, using the separating axis test on the 15 candidate axes. */
+	public boolean overlaps (OrientedBox other) {
+		final Vector3[] a = axes, b = other.axes;
+		final float ae0 = halfExtents.x, ae1 = halfExtents.y, ae2 = halfExtents.z;
+		final float be0 = other.halfExtents.x, be1 = other.halfExtents.y, be2 = other.halfExtents.z;
+		// The rotation of the other box in the frame of this box.
+		final float r00 = a[0].dot(b[0]), r01 = a[0].dot(b[1]), r02 = a[0].dot(b[2]);
+		final float r10 = a[1].dot(b[0]), r11 = a[1].dot(b[1]), r12 = a[1].dot(b[2]);
+		final float r20 = a[2].dot(b[0]), r21 = a[2].dot(b[1]), r22 = a[2].dot(b[2]);
+		// The epsilon keeps near parallel edges from giving a null cross product axis that separates everything.
+		final float q00 = Math.abs(r00) + EPSILON, q01 = Math.abs(r01) + EPSILON, q02 = Math.abs(r02) + EPSILON;
+		final float q10 = Math.abs(r10) + EPSILON, q11 = Math.abs(r11) + EPSILON, q12 = Math.abs(r12) + EPSILON;
+		final float q20 = Math.abs(r20) + EPSILON, q21 = Math.abs(r21) + EPSILON, q22 = Math.abs(r22) + EPSILON;
+		final float dx = other.center.x - center.x, dy = other.center.y - center.y, dz = other.center.z - center.z;
+		final float t0 = a[0].dot(dx, dy, dz), t1 = a[1].dot(dx, dy, dz), t2 = a[2].dot(dx, dy, dz);
+
+		// The axes of this box.
+		if (Math.abs(t0) > ae0 + be0 * q00 + be1 * q01 + be2 * q02) return false;
+		if (Math.abs(t1) > ae1 + be0 * q10 + be1 * q11 + be2 * q12) return false;
+		if (Math.abs(t2) > ae2 + be0 * q20 + be1 * q21 + be2 * q22) return false;
+		// The axes of the other box.
+		if (Math.abs(t0 * r00 + t1 * r10 + t2 * r20) > ae0 * q00 + ae1 * q10 + ae2 * q20 + be0) return false;
+		if (Math.abs(t0 * r01 + t1 * r11 + t2 * r21) > ae0 * q01 + ae1 * q11 + ae2 * q21 + be1) return false;
+		if (Math.abs(t0 * r02 + t1 * r12 + t2 * r22) > ae0 * q02 + ae1 * q12 + ae2 * q22 + be2) return false;
+		// The cross products of an axis of each box.
+		if (Math.abs(t2 * r10 - t1 * r20) > ae1 * q20 + ae2 * q10 + be1 * q02 + be2 * q01) return false;
+		if (Math.abs(t2 * r11 - t1 * r21) > ae1 * q21 + ae2 * q11 + be0 * q02 + be2 * q00) return false;
+		if (Math.abs(t2 * r12 - t1 * r22) > ae1 * q22 + ae2 * q12 + be0 * q01 + be1 * q00) return false;
+		if (Math.abs(t0 * r20 - t2 * r00) > ae0 * q20 + ae2 * q00 + be1 * q12 + be2 * q11) return false;
+		if (Math.abs(t0 * r21 - t2 * r01) > ae0 * q21 + ae2 * q01 + be0 * q12 + be2 * q10) return false;
+		if (Math.abs(t0 * r22 - t2 * r02) > ae0 * q22 + ae2 * q02 + be0 * q11 + be1 * q10) return false;
+		if (Math.abs(t1 * r00 - t0 * r10) > ae0 * q10 + ae1 * q00 + be1 * q22 + be2 * q21) return false;
+		if (Math.abs(t1 * r01 - t0 * r11) > ae0 * q11 + ae1 * q01 + be0 * q22 + be2 * q20) return false;
+		if (Math.abs(t1 * r02 - t0 * r12) > ae0 * q12 + ae1 * q02 + be0 * q21 + be1 * q20) return false;
+		return true;
+	}
+}
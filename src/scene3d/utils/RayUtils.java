@@ -0,0 +1,49 @@
+package scene3d.utils;
+
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.math.collision.Ray;
+
+/** Ray tests that return the distance to the hit, for picking the nearest of many volumes. */
+public class RayUtils {
+	/** Returns the distance along the ray, whose direction must be normalized, to where it enters the box, 0 if the origin is
+	 * inside of the box or -1 if the ray misses it. */
+	static public float intersectBox (Ray ray, BoundingBox box) {
+		return intersectBox(ray.origin.x, ray.origin.y, ray.origin.z, 1f / ray.direction.x, 1f / ray.direction.y,
+			1f / ray.direction.z, box.min.x, box.min.y, box.min.z, box.max.x, box.max.y, box.max.z);
+	}
+
+	/** The slab test, with the inverse of the ray direction precomputed so that it can be shared by many boxes.
+	 * @return the distance to where the ray enters the box, 0 if the origin is inside of the box or -1 if the ray misses it */
+	static public float intersectBox (float originX, float originY, float originZ, float inverseX, float inverseY,
+		float inverseZ, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		float near = 0, far = Float.POSITIVE_INFINITY;
+		float t1 = (minX - originX) * inverseX, t2 = (maxX - originX) * inverseX;
+		// A NaN, from a ray parallel to and in the plane of a slab, fails both comparisons and leaves that slab open.
+		if (t1 > t2) {
+			float t = t1;
+			t1 = t2;
+			t2 = t;
+		}
+		if (t1 > near) near = t1;
+		if (t2 < far) far = t2;
+		t1 = (minY - originY) * inverseY;
+		t2 = (maxY - originY) * inverseY;
+		if (t1 > t2) {
+			float t = t1;
+			t1 = t2;
+			t2 = t;
+		}
+		if (t1 > near) near = t1;
+		if (t2 < far) far = t2;
+		t1 = (minZ - originZ) * inverseZ;
+		t2 = (maxZ - originZ) * inverseZ;
+		if (t1 > t2) {
+			float t = t1;
+			t1 = t2;
+			t2 = t;
+		}
+		if (t1 > near) near = t1;
+		if (t2 < far) far = t2;
+		return near <= far ? near : -1f;
+	}
+}
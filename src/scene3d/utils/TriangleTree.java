@@ -0,0 +1,370 @@
+package scene3d.utils;
+
+import com.badlogic.gdx.graphics.g3d.Model;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.Ray;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.ObjectMap;
+
+/** A bounding volume hierarchy over the triangles of a {@link Model} in model space, for picking the exact triangle under a ray.
+ * It is built by {@link #get(Model)} the first time it is needed and then shared by every actor3d of that model. Nodes are split
+ * where the surface area heuristic predicts the cheapest traversal, and stored depth first in flat arrays.
+ * <p>
+ * The triangles are those of the bind pose, animations are not taken into account. Queries don't allocate, but keep their
+ * traversal stack and hit in this object, so they must all be made from the same thread. */
+public class TriangleTree {
+	static private final ObjectMap<Model, TriangleTree> cache = new ObjectMap<Model, TriangleTree>();
+	/** Shared by all models without triangles. */
+	static public final TriangleTree EMPTY = new TriangleTree(new float[0], 0);
+
+	static private final int LEAF_SIZE = 4;
+	static private final int BINS = 16;
+	static private final float EPSILON = 1e-7f;
+
+	/** x, y, z of the three corners per triangle, in the order of the model. */
+	private final float[] triangles;
+	private final int triangleCount;
+	/** The triangles in the order of the leaves. */
+	private final int[] order;
+	/** minX, minY, minZ, maxX, maxY, maxZ per node. */
+	private float[] bounds;
+	/** For a leaf the index of its first triangle in the order, for an inner node the index of its second child. The first child
+	 * of an inner node directly follows it. */
+	private int[] offsets;
+	/** The number of triangles of a leaf, 0 for an inner node. */
+	private int[] counts;
+	private int nodeCount;
+
+	private int[] stack = new int[64];
+	private int hitTriangle = -1;
+	private float hitNormalX, hitNormalY, hitNormalZ;
+
+	/** Builds the tree over the triangles of the model, without caching it. */
+	public TriangleTree (Model model) {
+		this(ModelBounds.getPositions(model, true));
+	}
+
+	private TriangleTree (FloatArray positions) {
+		this(positions.items, positions.size / 9);
+	}
+
+	/** @param triangles x, y, z of the three corners per triangle. The array is kept, not copied. */
+	public TriangleTree (float[] triangles, int count) {
+		this.triangles = triangles;
+		this.triangleCount = count;
+		order = new int[count];
+		for (int i = 0; i < count; i++)
+			order[i] = i;
+		final int maxNodes = Math.max(1, 2 * count - 1);
+		bounds = new float[maxNodes * 6];
+		offsets = new int[maxNodes];
+		counts = new int[maxNodes];
+		if (count > 0) {
+			final float[] centroids = new float[count * 3];
+			for (int i = 0; i < count; i++) {
+				final int t = i * 9;
+				centroids[i * 3] = (triangles[t] + triangles[t + 3] + triangles[t + 6]) / 3f;
+				centroids[i * 3 + 1] = (triangles[t + 1] + triangles[t + 4] + triangles[t + 7]) / 3f;
+				centroids[i * 3 + 2] = (triangles[t + 2] + triangles[t + 5] + triangles[t + 8]) / 3f;
+			}
+			build(centroids, 0, count, new float[BINS * 7]);
+		}
+	}
+
+	/** Returns the tree of the model, building it the first time the model is seen. */
+	static public TriangleTree get (Model model) {
+		synchronized (cache) {
+			TriangleTree tree = cache.get(model);
+			if (tree == null) {
+				tree = new TriangleTree(model);
+				if (tree.isEmpty())
+					tree = EMPTY;
+				else
+					cache.put(model, tree);
+			}
+			return tree;
+		}
+	}
+
+	/** Forgets the tree of the model, eg when it is disposed or its meshes were changed. */
+	static public void remove (Model model) {
+		synchronized (cache) {
+			cache.remove(model);
+		}
+	}
+
+	static public void clear () {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	public boolean isEmpty () {
+		return triangleCount == 0;
+	}
+
+	public int getTriangleCount () {
+		return triangleCount;
+	}
+
+	/** Returns x, y, z of the three corners per triangle in model space, for the first {@link #getTriangleCount()} triangles. Must
+	 * not be modified. */
+	public float[] getTriangles () {
+		return triangles;
+	}
+
+	/** Builds the node for the triangles from start to end in the order and its descendants.
+	 * @return the index of the node */
+	private int build (float[] centroids, int start, int end, float[] bins) {
+		final int node = nodeCount++;
+		final float[] triangles = this.triangles;
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+		float cMinX = Float.MAX_VALUE, cMinY = Float.MAX_VALUE, cMinZ = Float.MAX_VALUE;
+		float cMaxX = -Float.MAX_VALUE, cMaxY = -Float.MAX_VALUE, cMaxZ = -Float.MAX_VALUE;
+		for (int i = start; i < end; i++) {
+			final int triangle = order[i];
+			for (int t = triangle * 9, n = t + 9; t < n; t += 3) {
+				minX = Math.min(minX, triangles[t]);
+				minY = Math.min(minY, triangles[t + 1]);
+				minZ = Math.min(minZ, triangles[t + 2]);
+				maxX = Math.max(maxX, triangles[t]);
+				maxY = Math.max(maxY, triangles[t + 1]);
+				maxZ = Math.max(maxZ, triangles[t + 2]);
+			}
+			final int c = triangle * 3;
+			cMinX = Math.min(cMinX, centroids[c]);
+			cMinY = Math.min(cMinY, centroids[c + 1]);
+			cMinZ = Math.min(cMinZ, centroids[c + 2]);
+			cMaxX = Math.max(cMaxX, centroids[c]);
+			cMaxY = Math.max(cMaxY, centroids[c + 1]);
+			cMaxZ = Math.max(cMaxZ, centroids[c + 2]);
+		}
+		final int b = node * 6;
+		bounds[b] = minX;
+		bounds[b + 1] = minY;
+		bounds[b + 2] = minZ;
+		bounds[b + 3] = maxX;
+		bounds[b + 4] = maxY;
+		bounds[b + 5] = maxZ;
+
+		final int count = end - start;
+		if (count <= LEAF_SIZE) return leaf(node, start, count);
+		// Split along the axis in which the centroids spread the most.
+		int axis = 0;
+		float axisMin = cMinX, extent = cMaxX - cMinX;
+		if (cMaxY - cMinY > extent) {
+			axis = 1;
+			axisMin = cMinY;
+			extent = cMaxY - cMinY;
+		}
+		if (cMaxZ - cMinZ > extent) {
+			axis = 2;
+			axisMin = cMinZ;
+			extent = cMaxZ - cMinZ;
+		}
+		int mid;
+		if (extent <= 0)
+			mid = start + count / 2;
+		else {
+			final int split = findSplit(node, centroids, start, end, axis, axisMin, extent, bins);
+			if (split == -1 && count <= LEAF_SIZE * 4) return leaf(node, start, count);
+			if (split == -1)
+				mid = start + count / 2;
+			else {
+				final float scale = BINS / extent;
+				mid = partition(centroids, start, end, axis, axisMin, scale, split);
+				if (mid == start || mid == end) mid = start + count / 2;
+			}
+		}
+		build(centroids, start, mid, bins);
+		offsets[node] = build(centroids, mid, end, bins);
+		counts[node] = 0;
+		return node;
+	}
+
+	private int leaf (int node, int start, int count) {
+		offsets[node] = start;
+		counts[node] = count;
+		return node;
+	}
+
+	/** Sorts the triangles into bins along the axis and finds the bin boundary with the lowest surface area cost.
+	 * @return the number of bins on the left of the best split, or -1 if not splitting is cheaper */
+	private int findSplit (int node, float[] centroids, int start, int end, int axis, float axisMin, float extent, float[] bins) {
+		final float[] triangles = this.triangles;
+		final float scale = BINS / extent;
+		// Per bin: the triangle count and the box of the triangles.
+		for (int i = 0; i < BINS; i++) {
+			final int k = i * 7;
+			bins[k] = 0;
+			bins[k + 1] = bins[k + 2] = bins[k + 3] = Float.MAX_VALUE;
+			bins[k + 4] = bins[k + 5] = bins[k + 6] = -Float.MAX_VALUE;
+		}
+		for (int i = start; i < end; i++) {
+			final int triangle = order[i];
+			final int k = bin(centroids[triangle * 3 + axis], axisMin, scale) * 7;
+			bins[k]++;
+			for (int t = triangle * 9, n = t + 9; t < n; t += 3) {
+				bins[k + 1] = Math.min(bins[k + 1], triangles[t]);
+				bins[k + 2] = Math.min(bins[k + 2], triangles[t + 1]);
+				bins[k + 3] = Math.min(bins[k + 3], triangles[t + 2]);
+				bins[k + 4] = Math.max(bins[k + 4], triangles[t]);
+				bins[k + 5] = Math.max(bins[k + 5], triangles[t + 1]);
+				bins[k + 6] = Math.max(bins[k + 6], triangles[t + 2]);
+			}
+		}
+		// Sweep from the right to get the cost of every right side, then from the left to combine them.
+		final float[] rightCosts = new float[BINS];
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+		int rightCount = 0;
+		for (int i = BINS - 1; i > 0; i--) {
+			final int k = i * 7;
+			if (bins[k] > 0) {
+				rightCount += (int)bins[k];
+				minX = Math.min(minX, bins[k + 1]);
+				minY = Math.min(minY, bins[k + 2]);
+				minZ = Math.min(minZ, bins[k + 3]);
+				maxX = Math.max(maxX, bins[k + 4]);
+				maxY = Math.max(maxY, bins[k + 5]);
+				maxZ = Math.max(maxZ, bins[k + 6]);
+			}
+			rightCosts[i] = rightCount == 0 ? 0 : rightCount * area(minX, minY, minZ, maxX, maxY, maxZ);
+		}
+		minX = minY = minZ = Float.MAX_VALUE;
+		maxX = maxY = maxZ = -Float.MAX_VALUE;
+		int leftCount = 0, best = -1;
+		final int b = node * 6;
+		// Costs relative to testing one triangle, weighted by the surface: not splitting tests every triangle, splitting tests
+		// the child boxes, which is about as expensive as one triangle, and then the triangles of the children that are hit.
+		final float area = area(bounds[b], bounds[b + 1], bounds[b + 2], bounds[b + 3], bounds[b + 4], bounds[b + 5]);
+		float bestCost = (end - start) * area;
+		for (int i = 0; i < BINS - 1; i++) {
+			final int k = i * 7;
+			if (bins[k] > 0) {
+				leftCount += (int)bins[k];
+				minX = Math.min(minX, bins[k + 1]);
+				minY = Math.min(minY, bins[k + 2]);
+				minZ = Math.min(minZ, bins[k + 3]);
+				maxX = Math.max(maxX, bins[k + 4]);
+				maxY = Math.max(maxY, bins[k + 5]);
+				maxZ = Math.max(maxZ, bins[k + 6]);
+			}
+			if (leftCount == 0 || leftCount == end - start) continue;
+			final float cost = area + leftCount * area(minX, minY, minZ, maxX, maxY, maxZ) + rightCosts[i + 1];
+			if (cost < bestCost) {
+				bestCost = cost;
+				best = i + 1;
+			}
+		}
+		return best;
+	}
+
+	/** Moves the triangles in bins left of the split before the others.
+	 * @return the index of the first triangle right of the split */
+	private int partition (float[] centroids, int start, int end, int axis, float axisMin, float scale, int split) {
+		final int[] order = this.order;
+		int i = start, j = end - 1;
+		while (i <= j) {
+			if (bin(centroids[order[i] * 3 + axis], axisMin, scale) < split)
+				i++;
+			else {
+				final int t = order[i];
+				order[i] = order[j];
+				order[j--] = t;
+			}
+		}
+		return i;
+	}
+
+	static private int bin (float value, float min, float scale) {
+		return Math.min(BINS - 1, (int)((value - min) * scale));
+	}
+
+	static private float area (float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		final float dx = maxX - minX, dy = maxY - minY, dz = maxZ - minZ;
+		return dx * dy + dy * dz + dz * dx;
+	}
+
+	/** Finds the nearest triangle hit by the ray in model space. The direction does not need to be normalized, the distance is
+	 * measured in multiples of it. Both faces of the triangles are hit. Afterwards {@link #getHitTriangle()} and
+	 * {@link #getHitNormal(Vector3)} describe the hit.
+	 * @param maxDistance Triangles at this distance or farther are ignored.
+	 * @return the distance to the hit or -1 if no triangle was hit */
+	public float intersect (Ray ray, float maxDistance) {
+		hitTriangle = -1;
+		if (triangleCount == 0) return -1f;
+		final float ox = ray.origin.x, oy = ray.origin.y, oz = ray.origin.z;
+		final float dx = ray.direction.x, dy = ray.direction.y, dz = ray.direction.z;
+		final float ix = 1f / dx, iy = 1f / dy, iz = 1f / dz;
+		final float[] bounds = this.bounds, triangles = this.triangles;
+		final int[] offsets = this.offsets, counts = this.counts, order = this.order;
+		float nearest = maxDistance;
+		int top = 0;
+		stack[top++] = 0;
+		while (top > 0) {
+			final int node = stack[--top];
+			final int b = node * 6;
+			final float distance = RayUtils.intersectBox(ox, oy, oz, ix, iy, iz, bounds[b], bounds[b + 1], bounds[b + 2],
+				bounds[b + 3], bounds[b + 4], bounds[b + 5]);
+			if (distance < 0 || distance >= nearest) continue;
+			final int count = counts[node];
+			if (count == 0) {
+				if (top + 2 > stack.length) {
+					int[] newStack = new int[stack.length * 2];
+					System.arraycopy(stack, 0, newStack, 0, stack.length);
+					stack = newStack;
+				}
+				stack[top++] = offsets[node];
+				stack[top++] = node + 1;
+				continue;
+			}
+			for (int i = offsets[node], n = i + count; i < n; i++) {
+				final int triangle = order[i];
+				final int t = triangle * 9;
+				// Moller-Trumbore.
+				final float e1x = triangles[t + 3] - triangles[t], e1y = triangles[t + 4] - triangles[t + 1];
+				final float e1z = triangles[t + 5] - triangles[t + 2];
+				final float e2x = triangles[t + 6] - triangles[t], e2y = triangles[t + 7] - triangles[t + 1];
+				final float e2z = triangles[t + 8] - triangles[t + 2];
+				final float px = dy * e2z - dz * e2y, py = dz * e2x - dx * e2z, pz = dx * e2y - dy * e2x;
+				final float det = e1x * px + e1y * py + e1z * pz;
+				if (det > -EPSILON && det < EPSILON) continue;
+				final float invDet = 1f / det;
+				final float sx = ox - triangles[t], sy = oy - triangles[t + 1], sz = oz - triangles[t + 2];
+				final float u = (sx * px + sy * py + sz * pz) * invDet;
+				if (u < 0 || u > 1) continue;
+				final float qx = sy * e1z - sz * e1y, qy = sz * e1x - sx * e1z, qz = sx * e1y - sy * e1x;
+				final float v = (dx * qx + dy * qy + dz * qz) * invDet;
+				if (v < 0 || u + v > 1) continue;
+				final float hit = (e2x * qx + e2y * qy + e2z * qz) * invDet;
+				if (hit < 0 || hit >= nearest) continue;
+				nearest = hit;
+				hitTriangle = triangle;
+				hitNormalX = e1y * e2z - e1z * e2y;
+				hitNormalY = e1z * e2x - e1x * e2z;
+				hitNormalZ = e1x * e2y - e1y * e2x;
+			}
+		}
+		return hitTriangle == -1 ? -1f : nearest;
+	}
+
+	/** Returns the index, in the order the model draws them, of the triangle hit by the last {@link #intersect(Ray, float)}, or
+	 * -1. */
+	public int getHitTriangle () {
+		return hitTriangle;
+	}
+
+	/** Stores the normal in model space, not normalized, of the triangle hit by the last {@link #intersect(Ray, float)}. It
+	 * follows the winding of the triangle. */
+	public Vector3 getHitNormal (Vector3 out) {
+		return out.set(hitNormalX, hitNormalY, hitNormalZ);
+	}
+
+	/** Stores the corner, 0 to 2, of the triangle in model space. */
+	public Vector3 getCorner (int triangle, int corner, Vector3 out) {
+		final int t = triangle * 9 + corner * 3;
+		return out.set(triangles[t], triangles[t + 1], triangles[t + 2]);
+	}
+}
@@ -0,0 +1,78 @@
+package scene3d.utils;
+
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.VertexAttributes.Usage;
+import com.badlogic.gdx.math.Matrix4;
+
+/** Moves vertices into another space, for merging the meshes of several model instances into one. */
+public class VertexUtils {
+	/** Copies the vertices and transforms their positions by the matrix, and their normals, tangents and binormals by its rotation
+	 * and scale, keeping them unit length. Doesn't allocate, so it can run on several threads at once.
+	 * @param matrix The {@link Matrix4#val values} of the transform. */
+	static public void transform (float[] source, int sourceOffset, float[] target, int targetOffset, int count,
+		VertexAttributes attributes, float[] matrix) {
+		final int stride = attributes.vertexSize / 4;
+		System.arraycopy(source, sourceOffset, target, targetOffset, count * stride);
+		final float m00 = matrix[Matrix4.M00], m01 = matrix[Matrix4.M01], m02 = matrix[Matrix4.M02], m03 = matrix[Matrix4.M03];
+		final float m10 = matrix[Matrix4.M10], m11 = matrix[Matrix4.M11], m12 = matrix[Matrix4.M12], m13 = matrix[Matrix4.M13];
+		final float m20 = matrix[Matrix4.M20], m21 = matrix[Matrix4.M21], m22 = matrix[Matrix4.M22], m23 = matrix[Matrix4.M23];
+		// Normals transform with the inverse transpose, which is the cofactor matrix divided by the determinant. Only the sign of
+		// the determinant matters once they are normalized, and a flattened transform keeps them as they are.
+		float c00 = m11 * m22 - m12 * m21, c01 = m12 * m20 - m10 * m22, c02 = m10 * m21 - m11 * m20;
+		float c10 = m02 * m21 - m01 * m22, c11 = m00 * m22 - m02 * m20, c12 = m01 * m20 - m00 * m21;
+		float c20 = m01 * m12 - m02 * m11, c21 = m02 * m10 - m00 * m12, c22 = m00 * m11 - m01 * m10;
+		final float det = m00 * c00 + m01 * c01 + m02 * c02;
+		if (det == 0) {
+			c00 = c11 = c22 = 1;
+			c01 = c02 = c10 = c12 = c20 = c21 = 0;
+		}
+		final float sign = det < 0 ? -1 : 1;
+		for (int a = 0, n = attributes.size(); a < n; a++) {
+			final VertexAttribute attribute = attributes.get(a);
+			if (attribute.numComponents < 3) continue;
+			final int usage = attribute.usage;
+			final boolean position = usage == Usage.Position, normal = usage == Usage.Normal;
+			if (!position && !normal && usage != Usage.Tangent && usage != Usage.BiNormal) continue;
+			for (int i = 0, at = targetOffset + attribute.offset / 4; i < count; i++, at += stride) {
+				final float x = target[at], y = target[at + 1], z = target[at + 2];
+				if (position) {
+					target[at] = m00 * x + m01 * y + m02 * z + m03;
+					target[at + 1] = m10 * x + m11 * y + m12 * z + m13;
+					target[at + 2] = m20 * x + m21 * y + m22 * z + m23;
+					continue;
+				}
+				float tx, ty, tz;
+				if (normal) {
+					tx = sign * (c00 * x + c01 * y + c02 * z);
+					ty = sign * (c10 * x + c11 * y + c12 * z);
+					tz = sign * (c20 * x + c21 * y + c22 * z);
+				} else {
+					tx = m00 * x + m01 * y + m02 * z;
+					ty = m10 * x + m11 * y + m12 * z;
+					tz = m20 * x + m21 * y + m22 * z;
+				}
+				final float length2 = tx * tx + ty * ty + tz * tz;
+				if (length2 > 0) {
+					final float scale = 1f / (float)Math.sqrt(length2);
+					tx *= scale;
+					ty *= scale;
+					tz *= scale;
+				}
+				target[at] = tx;
+				target[at + 1] = ty;
+				target[at + 2] = tz;
+			}
+		}
+	}
+
+	/** Returns new attributes with the same layout, for creating a mesh like the one that has the attributes. */
+	static public VertexAttribute[] copy (VertexAttributes attributes) {
+		final VertexAttribute[] copy = new VertexAttribute[attributes.size()];
+		for (int i = 0; i < copy.length; i++) {
+			final VertexAttribute attribute = attributes.get(i);
+			copy[i] = new VertexAttribute(attribute.usage, attribute.numComponents, attribute.alias, attribute.unit);
+		}
+		return copy;
+	}
+}